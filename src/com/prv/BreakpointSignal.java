@@ -0,0 +1,76 @@
+package com.prv;
+
+import java.util.Arrays;
+
+// Piecewise linear signal compiled into flat breakpoint tables. Between two breakpoints the value
+// is interpolated, two breakpoints at the same time make a step (the later one holds from that
+// time on), before the first and after the last breakpoint the value is held.
+// Lookups start at the segment of the previous lookup, so evaluating at steadily increasing
+// times is O(1), anything else falls back to a binary search. The cursor is only a hint checked
+// on every lookup, so concurrent evaluation from several threads stays correct.
+public final class BreakpointSignal implements SignalFunction {
+
+    private final float[] times;
+    private final float[] values;
+    private int cursor = 0; // segment of the last lookup
+
+    // times must be non-decreasing, both arrays are copied
+    public BreakpointSignal(float[] times, float[] values) {
+        if (times.length == 0 || times.length != values.length) {
+            throw new IllegalArgumentException("Breakpoint tables must be non-empty and of equal length");
+        }
+        for (int i = 1; i < times.length; i++) {
+            if (times[i] < times[i - 1]) {
+                throw new IllegalArgumentException("Breakpoint times decrease at index " + i);
+            }
+        }
+        this.times = Arrays.copyOf(times, times.length);
+        this.values = Arrays.copyOf(values, values.length);
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public float getStartMs() {
+        return times[0];
+    }
+
+    public float getEndMs() {
+        return times[times.length - 1];
+    }
+
+    void copyTo(float[] times, float[] values) {
+        System.arraycopy(this.times, 0, times, 0, this.times.length);
+        System.arraycopy(this.values, 0, values, 0, this.values.length);
+    }
+
+    @Override
+    public float valueAt(float time_ms) {
+        int i = segmentOf(time_ms);
+        if (i < 0) return values[0];
+        if (i == times.length - 1) return values[i];
+
+        float t0 = times[i];
+        float t1 = times[i + 1];
+        return values[i] + (values[i + 1] - values[i]) * (time_ms - t0) / (t1 - t0);
+    }
+
+    // last breakpoint at or before time_ms, followed by a later one (or the last breakpoint), -1 before the first
+    private int segmentOf(float time_ms) {
+        int n = times.length;
+        int c = cursor;
+        if (c < n && times[c] <= time_ms && (c == n - 1 || time_ms < times[c + 1])) return c;
+        if (c + 1 < n - 1 && times[c + 1] <= time_ms && time_ms < times[c + 2]) return cursor = c + 1;
+
+        if (time_ms < times[0]) return -1;
+        // last index with times[i] <= time_ms
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (times[mid] <= time_ms) lo = mid;
+            else hi = mid - 1;
+        }
+        return cursor = lo;
+    }
+}
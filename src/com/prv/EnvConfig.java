@@ -24,6 +24,11 @@ public final class EnvConfig {
     public static final float PUMP_WATER_FLOW = -3.0f;
 
     
+    // signal functions used by the environment simulation by default
+    public static final SignalFunction CO_CONCENTRATION_SIGNAL = EnvConfig::coConcentrationFunction;
+    public static final SignalFunction CH4_CONCENTRATION_SIGNAL = EnvConfig::ch4ConcentrationFunction;
+    public static final SignalFunction AIR_FLOW_SIGNAL = EnvConfig::airFlowFunction;
+    
     // defining mathematical functions that will cleanly define signal values in time
     public static float coConcentrationFunction(float time_ms) {
     	if (time_ms < 0) return INITIAL_CO_CONCENTRATION;
@@ -1,61 +1,148 @@
 package com.prv;
 
 import com.prv.rt_system.ControlSystem;
+import com.prv.rt_system.InterruptController;
+import com.prv.rt_system.MCU;
+import com.prv.rt_system.SeqLock;
+import com.prv.rt_system.SimClock;
+import com.prv.rt_system.SimScheduler;
 
 public class EnvironmentState {
-    private static EnvironmentState instance;   // singleton instance
 
+    // Point in time copy of the environment, filled by snapshot()
+    public static final class Snapshot {
+        public float timeMs;
+        public float coConcentration;
+        public float ch4Concentration;
+        public float airFlow;
+        public float pumpWaterFlow;
+        public float waterLevel;
+        public boolean pumpOn;
+        public int version; // number of environment writes so far, changes with every update
+    }
+
+    // state written by the updater (and the pump actuator), guarded by the sequence lock so readers
+    // on other threads (ADCs, GUI, observers) see complete updates without blocking the 10 ms path
+    private final SeqLock lock = new SeqLock();
  // fields (private, with camelCase)
     private float coConcentration;
     private float ch4Concentration;
     private float airFlow;
     private float spontanetusWaterFlow;
-    private volatile float pumpWaterFlow = 0f;
+    private float pumpWaterFlow = 0f;
     private float waterLevel;
     private ControlSystem controlSystem;
     
     private float timePassed_ms = 0f;
+    // simulation time is taken from the control system's clock (wall clock or virtual time)
+    private final SimClock clock;
+    private final long startNs;
     
     private boolean pumpIsOn = false;
-    private boolean pumpWorkingProperly = true;
+    private volatile boolean pumpWorkingProperly = true;
+    
+    // signal profiles driving the gas and airflow values
+    private SignalFunction coSignal = EnvConfig.CO_CONCENTRATION_SIGNAL;
+    private SignalFunction ch4Signal = EnvConfig.CH4_CONCENTRATION_SIGNAL;
+    private SignalFunction airFlowSignal = EnvConfig.AIR_FLOW_SIGNAL;
+    
+    // Event driven stepping (virtual time): between pump switches the water level changes linearly,
+    // so every quantity is evaluated in closed form at the instant it is read, and the environment
+    // only runs when a water level probe comparator is due to switch
+    private static final int EVENT_PRIORITY = 8; // like the periodic updater
+    private static final long EVENT_MARGIN_NS = 1_000; // lands just past a switching level
+    private SimScheduler eventScheduler = null;
+    private double levelBase;       // water level at levelBaseNs, cm
+    private long levelBaseNs;
+    private long refreshedNs = Long.MIN_VALUE; // instant of the current field values
+    private static final long NO_PROBE_EVENT = Long.MIN_VALUE;
+    private static final int[] PROBE_LINES = { MCU.EXTI_WATER_LEVEL_HIGH, MCU.EXTI_WATER_LEVEL_LOW };
+    private long probeEventNs = NO_PROBE_EVENT; // instant of the current probe event, others are stale
+    private final Runnable probeEventAction = this::onScheduledProbeEvent; // reused by every event
+    private long probeEvents = 0;
+
+    // Copy a consistent state into the given snapshot (new one if null), lock free
+    public Snapshot snapshot(Snapshot into) {
+        if (into == null) into = new Snapshot();
+        catchUp();
+        int seq;
+        do {
+            seq = lock.readBegin();
+            into.timeMs = timePassed_ms;
+            into.coConcentration = coConcentration;
+            into.ch4Concentration = ch4Concentration;
+            into.airFlow = airFlow;
+            into.pumpWaterFlow = pumpWaterFlow;
+            into.waterLevel = waterLevel;
+            into.pumpOn = pumpIsOn;
+        } while (lock.readRetry(seq));
+        into.version = seq >>> 1;
+        return into;
+    }
 
-    // getters
+    // getters of single values, a value cannot tear, reading the sequence first makes it current
     public float getTimeMs() {
+        catchUp();
+        lock.readBegin();
         return timePassed_ms;
     }
 
     public float getCoConcentration() {
+        catchUp();
+        lock.readBegin();
         return coConcentration;
     }
 
     public float getCh4Concentration() {
+        catchUp();
+        lock.readBegin();
         return ch4Concentration;
     }
 
     public float getAirFlow() {
+        catchUp();
+        lock.readBegin();
         return airFlow;
     }
 
     public float getPumpWaterFlow() {
+        catchUp();
+        lock.readBegin();
         return pumpWaterFlow;
     }
+    
+    public boolean isPumpOn() {
+        catchUp();
+        lock.readBegin();
+        return pumpIsOn;
+    }
 
     public float getWaterLevel() {
+        catchUp();
+        lock.readBegin();
         return waterLevel;
     }
     
     public void turnPumpOn() {
     	if (pumpWorkingProperly) {
+    		long nowNs = rebaseWaterLevel();
+    		lock.writeBegin();
     		this.pumpIsOn = true;
         	this.pumpWaterFlow = EnvConfig.PUMP_WATER_FLOW;
+        	lock.writeEnd();
+        	scheduleProbeEvent(nowNs);
     	}
     	
     }
     
     public void turnPumpOff() {
     	if (pumpWorkingProperly) {
+    		long nowNs = rebaseWaterLevel();
+    		lock.writeBegin();
     		this.pumpIsOn = false;
     		this.pumpWaterFlow = 0;
+    		lock.writeEnd();
+    		scheduleProbeEvent(nowNs);
     	}
     }
     
@@ -70,7 +157,17 @@ public class EnvironmentState {
     	this.pumpWorkingProperly = val;
     }
     
-    // private constructor
+    public void setSignals(SignalFunction co, SignalFunction ch4, SignalFunction airFlow) {
+    	this.coSignal = co;
+    	this.ch4Signal = ch4;
+    	this.airFlowSignal = airFlow;
+    }
+    
+    // Independent environment of the given control system, starting from the configured defaults
+    public EnvironmentState(ControlSystem ctrlSys) {
+        this(EnvConfig.INITIAL_CO_CONCENTRATION, EnvConfig.INITIAL_CH4_CONCENTRATION, EnvConfig.INITIAL_AIR_FLOW, EnvConfig.WATER_FILLING_RATE, EnvConfig.HIGH_WATER_LEVEL, ctrlSys);
+    }
+    
     private EnvironmentState(float CO, float CH4, float air, float extWater, float level, ControlSystem ctrlSys) {
         this.coConcentration = CO;
         this.ch4Concentration = CH4;
@@ -78,27 +175,23 @@ public class EnvironmentState {
         this.spontanetusWaterFlow = extWater;
         this.waterLevel = level;
         this.controlSystem = ctrlSys;
-    }
-
-    // Singleton getter
-    public static EnvironmentState getInstance() {
-        if (instance == null) {
-            throw new IllegalStateException("Environment not initialized!");
-        }
-        return instance;
-    }
-
-    // Initialization method
-    public static void initialize(ControlSystem controlSystem) {
-        if (instance == null) {
-            instance = new EnvironmentState(EnvConfig.INITIAL_CO_CONCENTRATION, EnvConfig.INITIAL_CH4_CONCENTRATION, EnvConfig.INITIAL_AIR_FLOW, EnvConfig.WATER_FILLING_RATE, EnvConfig.HIGH_WATER_LEVEL, controlSystem);
-        }
+        this.clock = ctrlSys.getClock();
+        this.startNs = clock.nanoTime();
+        
+        // sensors and pump of the control system act on this environment
+        ctrlSys.attachEnvironment(this);
+        ctrlSys.getMcu().attachEnvironment(this);
     }
 
     // Move simulation forward for a small time period
     public void update(float dt_ms) {
-    	timePassed_ms += dt_ms;
+    	float time_ms = (float) ((clock.nanoTime() - startNs) / 1_000_000.0);
+    	float air = airFlowSignal.valueAt(time_ms);
+    	float co = coSignal.valueAt(time_ms);
+    	float ch4 = ch4Signal.valueAt(time_ms);
     	
+    	lock.writeBegin();
+    	timePassed_ms = time_ms;
         float totalWaterFlow = spontanetusWaterFlow;
         if (this.pumpIsOn) totalWaterFlow += pumpWaterFlow;
         
@@ -106,19 +199,115 @@ public class EnvironmentState {
         if (waterLevel > 100) waterLevel = 100;
         if (waterLevel < 0) waterLevel = 0;
         
-        airFlow = EnvConfig.airFlowFunction(timePassed_ms);
-        coConcentration = EnvConfig.coConcentrationFunction(timePassed_ms);
-        ch4Concentration = EnvConfig.ch4ConcentrationFunction(timePassed_ms);
-
+        airFlow = air;
+        coConcentration = co;
+        ch4Concentration = ch4;
+        float level = waterLevel;
+        lock.writeEnd();
         
-        if (waterLevel >= EnvConfig.HIGH_WATER_LEVEL) this.controlSystem.EXTIWaterLevelHigh();
-        if (waterLevel <= EnvConfig.LOW_WATER_LEVEL) this.controlSystem.EXTIWaterLevelLow();
+        // the probe comparators interrupt the control system on threshold crossings only
+        this.controlSystem.getMcu().setWaterLevelProbe(level);
+    }
+
+    // Switch to event driven stepping on the scheduler, instead of calling update() periodically
+    public void startEventDriven(SimScheduler scheduler) {
+    	eventScheduler = scheduler;
+    	long nowNs = clock.nanoTime();
+    	levelBase = waterLevel;
+    	levelBaseNs = nowNs;
+    	onProbeEvent();
+    }
+    
+    public boolean isEventDriven() {
+    	return eventScheduler != null;
+    }
+    
+    // number of times the event driven environment ran
+    public long getProbeEvents() {
+    	return probeEvents;
+    }
+    
+    private double waterFlowRate() {
+    	return pumpIsOn ? spontanetusWaterFlow + pumpWaterFlow : spontanetusWaterFlow;
+    }
+    
+    private double waterLevelAt(long nowNs) {
+    	double level = levelBase + waterFlowRate() * (nowNs - levelBaseNs) * 1e-9;
+    	return Math.min(100, Math.max(0, level));
+    }
+    
+    // bring the fields to the current instant (event driven only)
+    private void catchUp() {
+    	if (eventScheduler == null) return;
+    	long nowNs = clock.nanoTime();
+    	if (nowNs == refreshedNs) return;
+    	
+    	float time_ms = (float) ((nowNs - startNs) / 1_000_000.0);
+    	float air = airFlowSignal.valueAt(time_ms);
+    	float co = coSignal.valueAt(time_ms);
+    	float ch4 = ch4Signal.valueAt(time_ms);
+    	float level = (float) waterLevelAt(nowNs);
+    	
+    	lock.writeBegin();
+    	timePassed_ms = time_ms;
+    	waterLevel = level;
+    	airFlow = air;
+    	coConcentration = co;
+    	ch4Concentration = ch4;
+    	lock.writeEnd();
+    	refreshedNs = nowNs;
+    }
+    
+    // the flow rate is about to change: continue the level from the current instant
+    private long rebaseWaterLevel() {
+    	if (eventScheduler == null) return 0;
+    	long nowNs = clock.nanoTime();
+    	levelBase = waterLevelAt(nowNs);
+    	levelBaseNs = nowNs;
+    	return nowNs;
+    }
+    
+    private void onScheduledProbeEvent() {
+    	// rescheduled since, e.g. the flow rate changed
+    	if (eventScheduler.nanoTime() != probeEventNs) return;
+    	onProbeEvent();
+    }
+    
+    private void onProbeEvent() {
+    	probeEvents++;
+    	long nowNs = clock.nanoTime();
+    	this.controlSystem.getMcu().setWaterLevelProbe((float) waterLevelAt(nowNs));
+    	scheduleProbeEvent(nowNs);
+    }
+    
+    // Schedule the environment for the next switch of a water level probe comparator
+    private void scheduleProbeEvent(long nowNs) {
+    	if (eventScheduler == null) return;
+    	probeEventNs = NO_PROBE_EVENT;
+    	double rate = waterFlowRate();
+    	if (rate == 0) return;
+    	
+    	double level = waterLevelAt(nowNs);
+    	double delayS = Double.POSITIVE_INFINITY;
+    	InterruptController exti = controlSystem.getMcu().getInterruptController();
+    	for (int line : PROBE_LINES) {
+    		double target = exti.getSwitchingValue(line);
+    		boolean rising = !exti.getOutput(line);
+    		if (rising != rate > 0 || target < 0 || target > 100) continue; // moving away or never reached
+    		delayS = Math.min(delayS, Math.max(0, (target - level) / rate));
+    	}
+    	if (delayS == Double.POSITIVE_INFINITY) return;
+    	
+    	long atNs = nowNs + (long) Math.ceil(delayS * 1e9) + EVENT_MARGIN_NS;
+    	probeEventNs = atNs;
+    	eventScheduler.scheduleAt(atNs, EVENT_PRIORITY, probeEventAction);
     }
 
     @Override
     public String toString() {
+        Snapshot s = snapshot(null);
         return String.format("CO=%.2f, CH4=%.2f, Air=%.2f, ExtWater=%.2f, Level=%.2f",
-        		coConcentration, ch4Concentration, airFlow, spontanetusWaterFlow,
-        		waterLevel);
+        		s.coConcentration, s.ch4Concentration, s.airFlow, spontanetusWaterFlow,
+        		s.waterLevel);
     }
 }
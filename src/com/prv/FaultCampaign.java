@@ -0,0 +1,486 @@
+package com.prv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.prv.rt_system.ChannelType;
+import com.prv.rt_system.ControlSystem;
+import com.prv.rt_system.ControlSystem.AlarmType;
+import com.prv.rt_system.DiscreteEventScheduler;
+import com.prv.rt_system.MCU;
+import com.prv.rt_system.PeriodicTask;
+import com.prv.rt_system.PumpControlSubSys;
+
+// Headless Monte Carlo fault injection campaign.
+// Every scenario is a randomized run (gas profiles, sensor breakdowns and dropouts) of an isolated
+// simulation in virtual time: own scheduler, MCU, control system and environment. Scenarios run
+// in parallel on a fork/join pool and their outcomes are merged into one report with detection
+// latencies, missed detections and pump interlock violations (pump running while the true CH4
+// concentration is over the limit for longer than the interlock reaction allowance).
+// Scenario i only depends on the campaign seed and i, so every campaign is reproducible.
+public class FaultCampaign {
+
+    public static final int DEFAULT_SCENARIO_DURATION_S = 60;
+
+    private static final int READER_MS = ControlSystem.READER_TASK_PERIOD_MS;
+    private static final int ENV_MS = Simulator.ENVIROMENT_UPDATE_PERIOD_MS;
+
+    // a sensor fault must be flagged after two failed reader periods, shorter dropouts are not expected to be
+    static final float SENSOR_FAULT_MIN_MS = 3 * READER_MS;
+    // CH4 over the limit for at least two reader periods must be flagged
+    static final float CH4_EXCEEDANCE_MIN_MS = 2 * READER_MS;
+    // sample + read + pump controller period, longer pump operation over the CH4 limit is a violation
+    static final float INTERLOCK_ALLOWANCE_MS = 2 * READER_MS + PumpControlSubSys.TASK_PERIOD_MS + ENV_MS;
+
+    private static final int MAX_REPORTED_SCENARIOS = 10;
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    private final int scenarioCount;
+    private final long seed;
+    private final int durationS;
+    private final String channelConfig; // extra MCU channels, null for the primary ones only
+
+    public FaultCampaign(int scenarioCount, long seed, int durationS, String channelConfig) {
+        this.scenarioCount = scenarioCount;
+        this.seed = seed;
+        this.durationS = durationS;
+        this.channelConfig = channelConfig;
+    }
+
+    // Run every scenario on a pool of the given parallelism
+    public Stats run(int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new Batch(0, scenarioCount));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private final class Batch extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        Batch(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from == 1) {
+                Stats stats = new Stats();
+                runScenario(Scenario.generate(seed, from, durationS, channelTypes()), stats);
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            Batch left = new Batch(from, mid);
+            left.fork();
+            Stats right = new Batch(mid, to).compute();
+            Stats stats = left.join();
+            stats.merge(right); // keeps scenarios in index order
+            return stats;
+        }
+    }
+
+    // ===== one scenario =====
+
+    // Randomized fault scenario
+    static final class Scenario {
+        final int index;
+        final float durationMs;
+        final Profile co;
+        final Profile ch4;
+        final float airBase, airSwing, airPeriodMs;
+        final int[] faultChannel;
+        final float[] faultStartMs;
+        final float[] faultEndMs; // durationMs for permanent breakdowns
+
+        private Scenario(SplittableRandom rnd, int index, float durationMs, ChannelType[] types) {
+            this.index = index;
+            this.durationMs = durationMs;
+            this.co = Profile.random(rnd, durationMs, EnvConfig.CO_CONCENTRATION_LIMIT);
+            this.ch4 = Profile.random(rnd, durationMs, EnvConfig.CH4_CONCENTRATION_LIMIT);
+            this.airBase = (float) rnd.nextDouble(0.6, 2.0);
+            this.airSwing = (float) rnd.nextDouble(0, 0.6);
+            this.airPeriodMs = (float) rnd.nextDouble(5_000, 60_000);
+
+            int faults = rnd.nextInt(4);
+            faultChannel = new int[faults];
+            faultStartMs = new float[faults];
+            faultEndMs = new float[faults];
+            for (int i = 0; i < faults; i++) {
+                faultChannel[i] = rnd.nextInt(types.length);
+                faultStartMs[i] = (float) rnd.nextDouble(1_000, durationMs);
+                boolean permanent = rnd.nextInt(10) < 3;
+                float length = (float) rnd.nextDouble(50, 5_000);
+                faultEndMs[i] = permanent ? durationMs : Math.min(durationMs, faultStartMs[i] + length);
+            }
+        }
+
+        static Scenario generate(long campaignSeed, int index, int durationS, ChannelType[] types) {
+            SplittableRandom rnd = new SplittableRandom(campaignSeed * 0x9E3779B97F4A7C15L + index);
+            return new Scenario(rnd, index, durationS * 1000f, types);
+        }
+
+        float airFlowAt(float t) {
+            return airBase + airSwing * (float) Math.sin(2 * Math.PI * t / airPeriodMs);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("scenario " + index + ": CO " + co + ", CH4 " + ch4);
+            for (int i = 0; i < faultChannel.length; i++) {
+                sb.append(String.format(", ch%d fault %.2f-%.2f s", faultChannel[i], faultStartMs[i] / 1000, faultEndMs[i] / 1000));
+            }
+            return sb.toString();
+        }
+    }
+
+    // Gas concentration: baseline with up to two ramped pulses
+    static final class Profile {
+        final float base;
+        final float[] start, width, ramp, peak;
+
+        private Profile(float base, int pulses) {
+            this.base = base;
+            start = new float[pulses];
+            width = new float[pulses];
+            ramp = new float[pulses];
+            peak = new float[pulses];
+        }
+
+        static Profile random(SplittableRandom rnd, float durationMs, float limit) {
+            Profile p = new Profile((float) rnd.nextDouble(0.01, 0.5 * limit), rnd.nextInt(3));
+            for (int i = 0; i < p.start.length; i++) {
+                p.start[i] = (float) rnd.nextDouble(0, durationMs);
+                p.width[i] = (float) rnd.nextDouble(100, 15_000);
+                p.ramp[i] = (float) rnd.nextDouble(0, 2_000);
+                p.peak[i] = (float) rnd.nextDouble(0.5 * limit, 2.5 * limit);
+            }
+            return p;
+        }
+
+        float valueAt(float t) {
+            float v = base;
+            for (int i = 0; i < start.length; i++) {
+                float dt = t - start[i];
+                if (dt < 0 || dt > width[i]) continue;
+                float rise = ramp[i] > 0 ? Math.min(1, dt / ramp[i]) : 1;
+                v = Math.max(v, base + (peak[i] - base) * rise);
+            }
+            return v;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("base %.2f", base));
+            for (int i = 0; i < start.length; i++) {
+                sb.append(String.format(" pulse %.2f@%.2f-%.2f s", peak[i], start[i] / 1000, (start[i] + width[i]) / 1000));
+            }
+            return sb.toString();
+        }
+    }
+
+    private void runScenario(Scenario scenario, Stats stats) {
+        DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+        SectionContext section = new SectionContext("scenario-" + scenario.index, SectionContext.Resources.virtual(scheduler));
+        declareChannels(section.getMcu());
+        section.getControlSystem().setConsole(QUIET);
+        MCU mcu = section.getMcu();
+
+        EnvironmentState env = section.getEnvironment();
+        env.setSignals(scenario.co::valueAt, scenario.ch4::valueAt, scenario::airFlowAt);
+
+        // probe runs right after every environment update (same release, lower priority)
+        Observer observer = new Observer(env);
+        section.getControlSystem().getAlarmState().addListener((alarmId, raised, timestampNs) -> observer.onAlarm(alarmId, raised));
+        PeriodicTask probeTask = new PeriodicTask(ENV_MS, observer::afterEnvUpdate, 7);
+        probeTask.setScheduler(scheduler);
+
+        for (int i = 0; i < scenario.faultChannel.length; i++) {
+            int channel = scenario.faultChannel[i];
+            scheduler.scheduleAt(msToNs(scenario.faultStartMs[i]), Thread.MAX_PRIORITY, () -> mcu.brakeDownADCDevice(channel));
+            if (scenario.faultEndMs[i] < scenario.durationMs) {
+                scheduler.scheduleAt(msToNs(scenario.faultEndMs[i]), Thread.MAX_PRIORITY, () -> mcu.fixADCDevice(channel));
+            }
+        }
+
+        section.start();
+        probeTask.start();
+        scheduler.runUntil(msToNs(scenario.durationMs));
+        probeTask.shutdown();
+        section.stop();
+
+        observer.finish();
+        stats.scenarios++;
+        stats.simulatedMs += scenario.durationMs;
+        evaluate(scenario, mcu, observer, stats);
+    }
+
+    private void declareChannels(MCU mcu) {
+        if (channelConfig == null) return;
+        try {
+            mcu.declareChannels(new StringReader(channelConfig));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    private ChannelType[] channelTypes() {
+        MCU mcu = new MCU();
+        declareChannels(mcu);
+        ChannelType[] types = new ChannelType[mcu.getChannelCount()];
+        for (int ch = 0; ch < types.length; ch++) types[ch] = mcu.getChannelType(ch);
+        mcu.shutdown();
+        return types;
+    }
+
+    // Ground truth and alarm timeline of one run, all times in environment ms
+    private static final class Observer {
+        private final EnvironmentState env;
+        private final List<float[]> alarmTransitions = new ArrayList<>(); // {time, alarm id, raised}
+
+        // CH4 exceedance intervals {start, end}
+        private final List<float[]> exceedances = new ArrayList<>();
+        private float exceedanceStart = Float.NaN;
+
+        // pump running while CH4 is over the limit
+        private float exposureStart = Float.NaN;
+        private boolean exposureCounted = false; // current interval already counted as a violation
+        private float maxExposureMs = 0;
+        private int violations = 0;            // intervals longer than the allowance
+
+        private final EnvironmentState.Snapshot snapshot = new EnvironmentState.Snapshot();
+
+        Observer(EnvironmentState env) {
+            this.env = env;
+        }
+
+        void onAlarm(int alarmId, boolean raised) {
+            alarmTransitions.add(new float[] { env.getTimeMs(), alarmId, raised ? 1 : 0 });
+        }
+
+        void afterEnvUpdate() {
+            EnvironmentState.Snapshot s = env.snapshot(snapshot);
+            float t = s.timeMs;
+            boolean over = s.ch4Concentration > EnvConfig.CH4_CONCENTRATION_LIMIT;
+
+            if (over && Float.isNaN(exceedanceStart)) {
+                exceedanceStart = t;
+            } else if (!over && !Float.isNaN(exceedanceStart)) {
+                exceedances.add(new float[] { exceedanceStart, t });
+                exceedanceStart = Float.NaN;
+            }
+
+            if (over && s.pumpOn) {
+                if (Float.isNaN(exposureStart)) {
+                    exposureStart = t;
+                    exposureCounted = false;
+                }
+                float exposure = t - exposureStart;
+                if (exposure > INTERLOCK_ALLOWANCE_MS && !exposureCounted) {
+                    violations++;
+                    exposureCounted = true;
+                }
+                if (exposure > maxExposureMs) maxExposureMs = exposure;
+            } else {
+                exposureStart = Float.NaN;
+            }
+        }
+
+        void finish() {
+            if (!Float.isNaN(exceedanceStart)) {
+                exceedances.add(new float[] { exceedanceStart, env.getTimeMs() });
+            }
+        }
+
+        boolean isActive(AlarmType alarm, float t) {
+            boolean active = false;
+            for (float[] tr : alarmTransitions) {
+                if (tr[0] > t) break;
+                if ((int) tr[1] == alarm.ordinal()) active = tr[2] != 0;
+            }
+            return active;
+        }
+
+        // latency from 'from' until the alarm is raised (0 if already active), NaN if not raised by 'until'
+        float detectionLatency(AlarmType alarm, float from, float until) {
+            if (isActive(alarm, from)) return 0;
+            for (float[] tr : alarmTransitions) {
+                if (tr[0] > until) break;
+                if (tr[0] >= from && (int) tr[1] == alarm.ordinal() && tr[2] != 0) return tr[0] - from;
+            }
+            return Float.NaN;
+        }
+    }
+
+    private void evaluate(Scenario scenario, MCU mcu, Observer observer, Stats stats) {
+        boolean problem = false;
+
+        for (int i = 0; i < scenario.faultChannel.length; i++) {
+            float start = scenario.faultStartMs[i];
+            float end = scenario.faultEndMs[i];
+            if (end - start < SENSOR_FAULT_MIN_MS) continue;
+
+            stats.sensorFaults++;
+            AlarmType alarm = faultAlarmOf(mcu.getChannelType(scenario.faultChannel[i]));
+            float latency = observer.detectionLatency(alarm, start, end + READER_MS);
+            if (Float.isNaN(latency)) {
+                stats.sensorFaultsMissed++;
+                problem = true;
+            } else {
+                stats.sensorFaultLatency.add(latency);
+            }
+        }
+
+        for (float[] ex : observer.exceedances) {
+            if (ex[1] - ex[0] < CH4_EXCEEDANCE_MIN_MS) continue;
+
+            stats.ch4Exceedances++;
+            float latency = observer.detectionLatency(AlarmType.CH4_CONCENTRATION_TOO_HIGH, ex[0], ex[1] + READER_MS);
+            if (!Float.isNaN(latency)) {
+                stats.ch4Latency.add(latency);
+            } else if (!Float.isNaN(observer.detectionLatency(AlarmType.CH4_SENSOR_FAULT, ex[0], ex[1] + READER_MS))) {
+                stats.ch4Masked++; // sensor fault flagged instead
+            } else {
+                stats.ch4Missed++;
+                problem = true;
+            }
+        }
+
+        stats.pumpViolations += observer.violations;
+        stats.maxPumpExposureMs = Math.max(stats.maxPumpExposureMs, observer.maxExposureMs);
+        if (observer.violations > 0) {
+            stats.scenariosWithViolation++;
+            problem = true;
+        }
+
+        if (problem) stats.problemScenarios.add(scenario.toString());
+    }
+
+    private static AlarmType faultAlarmOf(ChannelType type) {
+        switch (type) {
+        case CO:
+            return AlarmType.CO_SENSOR_FAULT;
+        case CH4:
+            return AlarmType.CH4_SENSOR_FAULT;
+        case AIR_FLOW:
+            return AlarmType.AIR_FLOW_SENSOR_FAULT;
+        case WATER_FLOW:
+        default:
+            return AlarmType.WATER_FLOW_SENSOR_FAULT;
+        }
+    }
+
+    private static long msToNs(float ms) {
+        return (long) (ms * 1_000_000.0);
+    }
+
+    // ===== aggregated outcome =====
+
+    public static final class Stats {
+        public long scenarios = 0;
+        public double simulatedMs = 0;
+
+        public long sensorFaults = 0;
+        public long sensorFaultsMissed = 0;
+        public final Samples sensorFaultLatency = new Samples();
+
+        public long ch4Exceedances = 0;
+        public long ch4Masked = 0;
+        public long ch4Missed = 0;
+        public final Samples ch4Latency = new Samples();
+
+        public long pumpViolations = 0;
+        public long scenariosWithViolation = 0;
+        public float maxPumpExposureMs = 0;
+
+        public final List<String> problemScenarios = new ArrayList<>();
+
+        void merge(Stats o) {
+            scenarios += o.scenarios;
+            simulatedMs += o.simulatedMs;
+            sensorFaults += o.sensorFaults;
+            sensorFaultsMissed += o.sensorFaultsMissed;
+            sensorFaultLatency.addAll(o.sensorFaultLatency);
+            ch4Exceedances += o.ch4Exceedances;
+            ch4Masked += o.ch4Masked;
+            ch4Missed += o.ch4Missed;
+            ch4Latency.addAll(o.ch4Latency);
+            pumpViolations += o.pumpViolations;
+            scenariosWithViolation += o.scenariosWithViolation;
+            maxPumpExposureMs = Math.max(maxPumpExposureMs, o.maxPumpExposureMs);
+            problemScenarios.addAll(o.problemScenarios);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Campaign: %d scenarios, %.1f h simulated%n", scenarios, simulatedMs / 3_600_000));
+            sb.append(String.format("Sensor faults:   %d expected, %d missed (miss rate <= %.4f @95%%) | latency %s%n",
+                    sensorFaults, sensorFaultsMissed, wilsonUpper(sensorFaultsMissed, sensorFaults), sensorFaultLatency));
+            sb.append(String.format("CH4 over limit:  %d expected, %d masked by sensor fault, %d missed (miss rate <= %.4f @95%%) | latency %s%n",
+                    ch4Exceedances, ch4Masked, ch4Missed, wilsonUpper(ch4Missed, ch4Exceedances), ch4Latency));
+            sb.append(String.format("Pump interlock:  %d violations in %d scenarios (P(violation) <= %.4f @95%%), max exposure %.0f ms (allowance %.0f ms)%n",
+                    pumpViolations, scenariosWithViolation, wilsonUpper(scenariosWithViolation, scenarios),
+                    maxPumpExposureMs, INTERLOCK_ALLOWANCE_MS));
+            for (int i = 0; i < Math.min(MAX_REPORTED_SCENARIOS, problemScenarios.size()); i++) {
+                sb.append("  ").append(problemScenarios.get(i)).append(System.lineSeparator());
+            }
+            if (problemScenarios.size() > MAX_REPORTED_SCENARIOS) {
+                sb.append("  ... ").append(problemScenarios.size() - MAX_REPORTED_SCENARIOS).append(" more").append(System.lineSeparator());
+            }
+            return sb.toString();
+        }
+
+        // upper end of the 95% Wilson score interval of the proportion x / n
+        static double wilsonUpper(long x, long n) {
+            if (n == 0) return 1;
+            double z = 1.96;
+            double p = (double) x / n;
+            double z2n = z * z / n;
+            return (p + z2n / 2 + z * Math.sqrt(p * (1 - p) / n + z2n / (4 * n))) / (1 + z2n);
+        }
+    }
+
+    // Growable list of latencies in ms with percentiles
+    public static final class Samples {
+        private float[] values = new float[16];
+        private int size = 0;
+
+        void add(float v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        void addAll(Samples o) {
+            for (int i = 0; i < o.size; i++) add(o.values[i]);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public float percentile(double p) {
+            if (size == 0) return Float.NaN;
+            float[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(size - 1, Math.ceil(p / 100 * size) - 1 < 0 ? 0 : Math.ceil(p / 100 * size) - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50=%.0f p99=%.0f max=%.0f ms", percentile(50), percentile(99), percentile(100));
+        }
+    }
+}
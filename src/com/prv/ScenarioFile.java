@@ -0,0 +1,388 @@
+package com.prv;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Environment scenario parsed from a text file and compiled into BreakpointSignal tables, so
+// profiles change without recompiling and evaluating them per tick never allocates.
+//
+//   # comment
+//   duration 60000          # scenario length in ms (default 60000)
+//   resolution 50           # sample period of sine, noise and trace resampling in ms (default 50)
+//   [co]                    # profile of co, ch4 or air_flow, missing ones use the EnvConfig functions
+//   0     const 0.01        # <start ms> <segment>, a segment lasts until the next one starts
+//   2000  ramp 0.1 1.3 5000 # from 0.1 to 1.3 in 5000 ms, then hold
+//   0     sine 1 1 12566.37 [phase ms]  # offset + amplitude * sin(2pi (t + phase) / period)
+//   30000 trace file.csv    # recorded "t_ms,value" lines, t relative to the segment start
+//   0     noise 0.05 7 [end ms]         # overlay: uniform +-0.05 noise with seed 7 on top of the segments
+//
+// Segment starts must not decrease within a profile. Noise overlays do not end a segment.
+public final class ScenarioFile {
+
+    public static final float DEFAULT_DURATION_MS = 60_000;
+    public static final float DEFAULT_RESOLUTION_MS = 50;
+
+    private static final String[] PROFILES = { "co", "ch4", "air_flow" };
+
+    private final String name;
+    private final float durationMs;
+    private final SignalFunction[] signals;
+
+    private ScenarioFile(String name, float durationMs, SignalFunction[] signals) {
+        this.name = name;
+        this.durationMs = durationMs;
+        this.signals = signals;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public float getDurationMs() {
+        return durationMs;
+    }
+
+    public SignalFunction getCoSignal() {
+        return signals[0];
+    }
+
+    public SignalFunction getCh4Signal() {
+        return signals[1];
+    }
+
+    public SignalFunction getAirFlowSignal() {
+        return signals[2];
+    }
+
+    // Drive the environment with this scenario's profiles
+    public void applyTo(EnvironmentState environment) {
+        environment.setSignals(signals[0], signals[1], signals[2]);
+    }
+
+    // Add the profiles to the batch as a signal set, returns its index
+    public int addTo(ZoneBatch batch) {
+        return batch.addSignalSet(signals[0], signals[1], signals[2]);
+    }
+
+    public static ScenarioFile load(File file) throws IOException {
+        String fileName = file.getName();
+        int dot = fileName.lastIndexOf('.');
+        try (Reader reader = new FileReader(file)) {
+            return parse(dot > 0 ? fileName.substring(0, dot) : fileName, reader, file.getAbsoluteFile().getParentFile());
+        }
+    }
+
+    // traces are resolved against baseDir
+    public static ScenarioFile parse(String name, Reader source, File baseDir) throws IOException {
+        BufferedReader reader = new BufferedReader(source);
+        float duration = DEFAULT_DURATION_MS;
+        float resolution = DEFAULT_RESOLUTION_MS;
+        List<List<Segment>> profiles = new ArrayList<>();
+        for (int p = 0; p < PROFILES.length; p++) profiles.add(null);
+        List<Segment> current = null;
+
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            try {
+                if (line.startsWith("[")) {
+                    if (!line.endsWith("]")) throw new IllegalArgumentException("unterminated profile header");
+                    int p = Arrays.asList(PROFILES).indexOf(line.substring(1, line.length() - 1).trim().toLowerCase(Locale.ROOT));
+                    if (p < 0) throw new IllegalArgumentException("unknown profile " + line + ", expected one of " + Arrays.toString(PROFILES));
+                    if (profiles.get(p) != null) throw new IllegalArgumentException("profile " + line + " defined twice");
+                    current = new ArrayList<>();
+                    profiles.set(p, current);
+                    continue;
+                }
+
+                String[] f = line.split("\\s+");
+                if (current == null) {
+                    if (f.length != 2) throw new IllegalArgumentException("expected 'duration <ms>' or 'resolution <ms>'");
+                    float v = parsePositive(f[1]);
+                    if (f[0].equals("duration")) duration = v;
+                    else if (f[0].equals("resolution")) resolution = v;
+                    else throw new IllegalArgumentException("unknown setting " + f[0]);
+                    continue;
+                }
+
+                Segment segment = Segment.parse(f, baseDir);
+                if (!segment.overlay) {
+                    for (int i = current.size() - 1; i >= 0; i--) {
+                        Segment prev = current.get(i);
+                        if (prev.overlay) continue;
+                        if (segment.start < prev.start) throw new IllegalArgumentException("segment starts before the previous one");
+                        break;
+                    }
+                }
+                current.add(segment);
+            } catch (IllegalArgumentException | IOException e) {
+                throw new IOException(name + " line " + lineNo + ": " + e.getMessage(), e);
+            }
+        }
+
+        SignalFunction[] signals = { EnvConfig.CO_CONCENTRATION_SIGNAL, EnvConfig.CH4_CONCENTRATION_SIGNAL, EnvConfig.AIR_FLOW_SIGNAL };
+        for (int p = 0; p < PROFILES.length; p++) {
+            List<Segment> segments = profiles.get(p);
+            if (segments == null) continue;
+            if (segments.stream().allMatch(s -> s.overlay)) {
+                throw new IOException(name + ": profile [" + PROFILES[p] + "] has no segments");
+            }
+            signals[p] = compile(segments, duration, resolution);
+        }
+        return new ScenarioFile(name, duration, signals);
+    }
+
+    private static float parsePositive(String field) {
+        float v = Float.parseFloat(field);
+        if (!(v > 0)) throw new IllegalArgumentException("expected a positive number, got " + field);
+        return v;
+    }
+
+    // ===== segments =====
+
+    private static final class Segment {
+        final float start;
+        final String kind;
+        final float[] args;
+        final boolean overlay;
+        final float[] traceTimes;   // trace only
+        final float[] traceValues;
+
+        private Segment(float start, String kind, float[] args, float[] traceTimes, float[] traceValues) {
+            this.start = start;
+            this.kind = kind;
+            this.args = args;
+            this.overlay = kind.equals("noise");
+            this.traceTimes = traceTimes;
+            this.traceValues = traceValues;
+        }
+
+        static Segment parse(String[] f, File baseDir) throws IOException {
+            if (f.length < 2) throw new IllegalArgumentException("expected '<start ms> <segment> ...'");
+            float start = Float.parseFloat(f[0]);
+            String kind = f[1].toLowerCase(Locale.ROOT);
+
+            if (kind.equals("trace")) {
+                if (f.length != 3) throw new IllegalArgumentException("expected 'trace <file>'");
+                File file = new File(f[2]);
+                if (!file.isAbsolute() && baseDir != null) file = new File(baseDir, f[2]);
+                List<float[]> points = readTrace(file);
+                float[] times = new float[points.size()];
+                float[] values = new float[points.size()];
+                for (int i = 0; i < times.length; i++) {
+                    times[i] = points.get(i)[0];
+                    values[i] = points.get(i)[1];
+                }
+                return new Segment(start, kind, new float[0], times, values);
+            }
+
+            int min, max;
+            switch (kind) {
+            case "const":
+                min = max = 1;
+                break;
+            case "ramp":
+                min = max = 3;
+                break;
+            case "sine":
+                min = 3;
+                max = 4;
+                break;
+            case "noise":
+                min = 2;
+                max = 3;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown segment " + f[1]);
+            }
+            int n = f.length - 2;
+            if (n < min || n > max) {
+                throw new IllegalArgumentException(kind + " takes " + (min == max ? "" + min : min + "-" + max) + " arguments, got " + n);
+            }
+            float[] args = new float[n];
+            for (int i = 0; i < n; i++) args[i] = Float.parseFloat(f[i + 2]);
+            if (kind.equals("ramp") && !(args[2] > 0)) throw new IllegalArgumentException("ramp length must be positive");
+            if (kind.equals("sine") && !(args[2] > 0)) throw new IllegalArgumentException("sine period must be positive");
+            return new Segment(start, kind, args, null, null);
+        }
+
+        private static List<float[]> readTrace(File file) throws IOException {
+            List<float[]> points = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                int lineNo = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNo++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    String[] f = line.split("[,;\\s]+");
+                    try {
+                        if (f.length != 2) throw new IllegalArgumentException("expected 't_ms,value'");
+                        float t = Float.parseFloat(f[0]);
+                        if (!points.isEmpty() && t < points.get(points.size() - 1)[0]) {
+                            throw new IllegalArgumentException("time decreases");
+                        }
+                        points.add(new float[] { t, Float.parseFloat(f[1]) });
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("trace " + file + " line " + lineNo + ": " + e.getMessage(), e);
+                    }
+                }
+            }
+            if (points.isEmpty()) throw new IOException("trace " + file + " is empty");
+            return points;
+        }
+    }
+
+    // ===== compilation =====
+
+    // Growable breakpoint table
+    private static final class Table {
+        float[] times = new float[64];
+        float[] values = new float[64];
+        int size = 0;
+
+        void add(float t, float v) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = t;
+            values[size] = v;
+            size++;
+        }
+
+        float lastValue() {
+            return values[size - 1];
+        }
+
+        BreakpointSignal toSignal() {
+            return new BreakpointSignal(Arrays.copyOf(times, size), Arrays.copyOf(values, size));
+        }
+    }
+
+    private static BreakpointSignal compile(List<Segment> segments, float duration, float resolution) {
+        List<Segment> base = new ArrayList<>();
+        List<Segment> overlays = new ArrayList<>();
+        for (Segment s : segments) (s.overlay ? overlays : base).add(s);
+
+        Table table = new Table();
+        for (int i = 0; i < base.size(); i++) {
+            Segment s = base.get(i);
+            float end = i + 1 < base.size() ? base.get(i + 1).start : Math.max(duration, s.start);
+            emit(s, end, resolution, table);
+        }
+        BreakpointSignal signal = table.toSignal();
+
+        for (Segment noise : overlays) {
+            signal = addNoise(signal, noise, duration, resolution);
+        }
+        return signal;
+    }
+
+    // Breakpoints of one base segment over [s.start, end], the value holds until end
+    private static void emit(Segment s, float end, float resolution, Table table) {
+        float start = s.start;
+        switch (s.kind) {
+        case "const":
+            table.add(start, s.args[0]);
+            break;
+        case "ramp": {
+            float v0 = s.args[0], v1 = s.args[1], length = s.args[2];
+            table.add(start, v0);
+            float rampEnd = Math.min(end, start + length);
+            table.add(rampEnd, v0 + (v1 - v0) * (rampEnd - start) / length);
+            break;
+        }
+        case "sine": {
+            float offset = s.args[0], amplitude = s.args[1], period = s.args[2];
+            float phase = s.args.length > 3 ? s.args[3] : 0;
+            for (long k = 0; ; k++) {
+                float t = Math.min(end, start + k * resolution);
+                table.add(t, offset + amplitude * (float) Math.sin(2 * Math.PI * (t + phase) / period));
+                if (t >= end) break;
+            }
+            break;
+        }
+        case "trace":
+            // first recorded value from the segment start on
+            table.add(start, s.traceValues[0]);
+            for (int i = 0; i < s.traceTimes.length && start + s.traceTimes[i] <= end; i++) {
+                if (s.traceTimes[i] > 0) table.add(start + s.traceTimes[i], s.traceValues[i]);
+            }
+            break;
+        default:
+            throw new IllegalStateException(s.kind);
+        }
+        if (table.times[table.size - 1] < end) table.add(end, table.lastValue());
+    }
+
+    // Base breakpoints outside [start, end) are kept, inside they are resampled every resolution ms
+    // (base breakpoints kept as well) with deterministic uniform noise added
+    private static BreakpointSignal addNoise(BreakpointSignal base, Segment noise, float duration, float resolution) {
+        float amplitude = noise.args[0];
+        long seed = (long) noise.args[1];
+        float start = noise.start;
+        float end = noise.args.length > 2 ? noise.args[2] : Math.max(duration, base.getEndMs());
+
+        float[] bt = new float[base.size()];
+        float[] bv = new float[base.size()];
+        base.copyTo(bt, bv);
+
+        Table table = new Table();
+        int i = 0;
+        while (i < bt.length && bt[i] < start) {
+            table.add(bt[i], bv[i]);
+            i++;
+        }
+        for (long k = 0; ; k++) {
+            float t = start + k * resolution;
+            if (t >= end) break;
+            // base breakpoints inside this sample interval, then the sample itself
+            while (i < bt.length && bt[i] <= t) {
+                table.add(bt[i], bv[i] + noiseAt(seed, bt[i], start, resolution, amplitude));
+                i++;
+            }
+            table.add(t, base.valueAt(t) + noiseAt(seed, t, start, resolution, amplitude));
+        }
+        while (i < bt.length && bt[i] < end) {
+            table.add(bt[i], bv[i] + noiseAt(seed, bt[i], start, resolution, amplitude));
+            i++;
+        }
+        table.add(end, base.valueAt(end));
+        while (i < bt.length) {
+            table.add(bt[i], bv[i]);
+            i++;
+        }
+        return table.toSignal();
+    }
+
+    // noise interpolated between the values of the surrounding samples
+    private static float noiseAt(long seed, float t, float start, float resolution, float amplitude) {
+        float pos = (t - start) / resolution;
+        long k = (long) Math.floor(pos);
+        float a = uniform(seed, k), b = uniform(seed, k + 1);
+        return amplitude * (a + (b - a) * (pos - k));
+    }
+
+    // deterministic uniform value in [-1, 1) of sample k
+    private static float uniform(long seed, long k) {
+        long h = seed * 0x9E3779B97F4A7C15L + k;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return (h >>> 40) / (float) (1L << 23) - 1f;
+    }
+}
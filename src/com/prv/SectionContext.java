@@ -0,0 +1,178 @@
+package com.prv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.prv.rt_system.ControlSystem;
+import com.prv.rt_system.EventRing;
+import com.prv.rt_system.MCU;
+import com.prv.rt_system.PeriodicTask;
+import com.prv.rt_system.SchedulabilityAnalysis;
+import com.prv.rt_system.SimScheduler;
+import com.prv.rt_system.TaskDispatcher;
+import com.prv.rt_system.TimerWheel;
+
+// One mine section: MCU, control system and simulated environment wired to each other.
+// Sections hold no static state, so any number of them can live in one JVM. The sections of a
+// process share Resources: the event ring with its consumers, the scheduler in virtual time, or
+// the task dispatcher and the ADC conversion timer thread in real time. Their tasks compete for
+// the same CPU, so the schedulability analysis covers the tasks of every section: the first
+// section reports the live and final analyses, the startup one comes from the Resources.
+public class SectionContext {
+
+    // Execution resources shared by all sections of a process
+    public static final class Resources {
+        // shared by the sections, so larger than the ring of a single control system
+        public static final int EVENT_RING_CAPACITY = 4 * ControlSystem.EVENT_BUS_CAPACITY;
+
+        final SimScheduler scheduler;          // null -> real time
+        final TaskDispatcher dispatcher;       // null -> every task runs on its own thread
+        final TimerWheel conversionTimer;      // null in virtual time
+        final EventRing events;                // control events of every section
+        final List<PeriodicTask> tasks = new CopyOnWriteArrayList<>(); // tasks of every section
+        private int sectionCount = 0;
+
+        private Resources(SimScheduler scheduler, TaskDispatcher dispatcher, TimerWheel conversionTimer) {
+            this.scheduler = scheduler;
+            this.dispatcher = dispatcher;
+            this.conversionTimer = conversionTimer;
+            this.events = new EventRing(EVENT_RING_CAPACITY, scheduler);
+        }
+
+        // every task and ADC conversion of every section runs on the scheduler
+        public static Resources virtual(SimScheduler scheduler) {
+            return new Resources(scheduler, null, null);
+        }
+
+        // real time tasks on the dispatcher (null -> own threads), one conversion timer thread
+        public static Resources realTime(TaskDispatcher dispatcher) {
+            return new Resources(null, dispatcher, MCU.newConversionTimer());
+        }
+
+        public SimScheduler getScheduler() {
+            return scheduler;
+        }
+
+        public TaskDispatcher getDispatcher() {
+            return dispatcher;
+        }
+
+        public EventRing getEvents() {
+            return events;
+        }
+
+        public synchronized int getSectionCount() {
+            return sectionCount;
+        }
+
+        // true for the first section
+        private synchronized boolean addSection() {
+            return sectionCount++ == 0;
+        }
+
+        // Schedulability of the tasks of every section together, once they are all started,
+        // with configured budgets (measured = false) or with measured WCETs (measured = true)
+        public SchedulabilityAnalysis.Report analyseSchedulability(boolean measured) {
+            return SchedulabilityAnalysis.analyseTasks(tasks, measured, dispatcher);
+        }
+
+        // after every section is stopped
+        public void shutdown() {
+            events.shutdown();
+            if (conversionTimer != null) conversionTimer.shutdown();
+            if (dispatcher != null) dispatcher.shutdown();
+        }
+    }
+
+    private final String name;
+    private final MCU mcu;
+    private final ControlSystem controlSystem;
+    private final EnvironmentState environment;
+    private final PeriodicTask envUpdateTask;
+    private final SimScheduler scheduler;
+    private boolean eventDrivenEnvironment = false;
+
+    public SectionContext(String name, Resources resources) {
+        this.name = name;
+        this.scheduler = resources.scheduler;
+        this.mcu = resources.scheduler != null ? new MCU(resources.scheduler) : new MCU(resources.conversionTimer);
+        this.controlSystem = new ControlSystem(mcu, null, resources.scheduler, resources.events);
+        controlSystem.setDispatcher(resources.dispatcher);
+        controlSystem.setSharedTasks(resources.tasks, resources.addSection());
+        this.environment = new EnvironmentState(controlSystem);
+
+        envUpdateTask = new PeriodicTask(Simulator.ENVIROMENT_UPDATE_PERIOD_MS,
+                () -> environment.update(Simulator.ENVIROMENT_UPDATE_PERIOD_MS), 8, resources.dispatcher);
+        envUpdateTask.setName(name + "/envUpdater");
+        envUpdateTask.setWcetBudgetMs(Simulator.ENVIROMENT_UPDATE_WCET_BUDGET_MS);
+        envUpdateTask.setScheduler(resources.scheduler);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MCU getMcu() {
+        return mcu;
+    }
+
+    public ControlSystem getControlSystem() {
+        return controlSystem;
+    }
+
+    public EnvironmentState getEnvironment() {
+        return environment;
+    }
+
+    public PeriodicTask getEnvUpdateTask() {
+        return envUpdateTask;
+    }
+
+    // Declare additional channels (MCU channel config format), before start
+    public void declareChannels(String channelConfig) throws IOException {
+        try (Reader config = new StringReader(channelConfig)) {
+            mcu.declareChannels(config);
+        }
+    }
+
+    // Step the environment only when a water level probe switches instead of every update period
+    // (see EnvironmentState.startEventDriven), virtual time only, before start
+    public void setEventDrivenEnvironment(boolean eventDriven) {
+        if (eventDriven && scheduler == null) {
+            throw new IllegalStateException("Event driven environment needs virtual time");
+        }
+        this.eventDrivenEnvironment = eventDriven;
+    }
+
+    // Start the environment and every control task
+    public void start() {
+        if (eventDrivenEnvironment) {
+            environment.startEventDriven(scheduler);
+        } else {
+            controlSystem.registerTask(envUpdateTask);
+            envUpdateTask.start();
+        }
+        controlSystem.startControl();
+    }
+
+    public void stop() {
+        controlSystem.stopControl();
+        envUpdateTask.shutdown();
+        mcu.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder alarms = new StringBuilder();
+        ControlSystem.AlarmType[] types = ControlSystem.AlarmType.values();
+        for (int id = controlSystem.getAlarmState().nextActive(0); id >= 0; id = controlSystem.getAlarmState().nextActive(id + 1)) {
+            alarms.append(alarms.length() == 0 ? "" : ",").append(types[id]);
+        }
+        EnvironmentState.Snapshot env = environment.snapshot(null);
+        return String.format("%s: t=%.1f s, water %.1f cm, pump %s, alarms [%s]", name,
+                env.timeMs / 1000, env.waterLevel, env.pumpOn ? "ON" : "OFF", alarms);
+    }
+}
@@ -0,0 +1,7 @@
+package com.prv;
+
+// Signal value as a function of simulation time, primitive so evaluating it never allocates
+@FunctionalInterface
+public interface SignalFunction {
+    float valueAt(float time_ms);
+}
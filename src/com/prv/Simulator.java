@@ -1,72 +1,415 @@
 package com.prv;
 
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.SwingUtilities;
 
+import com.prv.rt_system.BinaryRecorder;
 import com.prv.rt_system.ControlSystem;
-import com.prv.rt_system.PeriodicTask;
+import com.prv.rt_system.DiscreteEventScheduler;
+import com.prv.rt_system.ReleaseTimer;
+import com.prv.rt_system.ReplayEngine;
+import com.prv.rt_system.TaskDispatcher;
 import com.prv.rt_system.EnvGUI;
+import com.prv.rt_system.FileLogConsumer;
+import com.prv.rt_system.MCU;
 
 public class Simulator {
 	public static final int ENVIROMENT_UPDATE_PERIOD_MS = 10;
+	public static final double ENVIROMENT_UPDATE_WCET_BUDGET_MS = 0.5;
+	
+	private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
 
-    public static void main(String[] args) throws InterruptedException, InvocationTargetException { 	
-    	ControlSystem controlSystem = new ControlSystem();
+    // Usage: Simulator [--dispatcher=edf|rm|fp] [--workers=N] [--spin-margin-us=N] [--scan-ms=N] [--channels=file] [--filter=id:spec]... [--event-log=file] [--record=dir] [--duration-s=N] [--virtual [--env-events]] [--sections=N] [--scenario=file]
+    //        Simulator --replay=dir [--replay-speed=N|max] [--replay-section=name] [--channels=file] [--filter=id:spec]...
+    //        Simulator --zones=N [--workers=N] [--duration-s=N] [--scenario=file]
+    //        Simulator --scenario=dir [--channels=file] [--filter=id:spec]...
+    //        Simulator --campaign=N [--campaign-seed=S] [--workers=N] [--duration-s=N] [--channels=file]
+    // Without --dispatcher every periodic task runs on its own thread
+    // --spin-margin-us makes the environment updater park/spin to its exact release instants,
+    //   only without --dispatcher and --virtual
+    // --scan-ms switches the ADCs to continuous scan mode sampling every N ms
+    // --channels declares additional MCU channels from a config file
+    // --filter sets the signal filter of a channel, e.g. --filter=1:MEDIAN:5 or --filter=0:EWMA:0.3;
+    //   --filter=1:ROC:0.05 also publishes the channel's rate of change and alarms above 0.05 per second
+    // --event-log appends every control event (incl. samples) to a text file
+    // --record appends samples, alarm transitions, pump commands and inputs to memory mapped binary segments in dir
+    // --duration-s sets how long the simulation runs (default 20 s or the scenario's duration)
+    // --scenario drives the environment with the profiles of a scenario file (see ScenarioFile); with a
+    //   directory every *.scn scenario in it is run in virtual time, one line of results per scenario
+    // --virtual runs headless in virtual time: every task and ADC conversion is an event of one
+    //   discrete event scheduler, so the run takes only the time of the work done and is reproducible
+    // --env-events steps the environment only when a water level probe comparator switches, every
+    //   quantity is evaluated in closed form when it is read (virtual time and scenario directories only)
+    // --sections runs N independent mine sections in this JVM sharing the scheduler or the dispatcher and
+    //   ADC timer thread; the GUI shows the first one, recordings are named after the section (section-000, ...)
+    //   and event logs get the section name appended
+    // --replay re-runs the control logic on a recording (1x, N times faster or max speed) and diffs its decisions,
+    //   --replay-section picks the recording of one section (default: session); pass the recording's rate of
+    //   change filters, rates are derived again from the recorded samples
+    // --zones steps a batch environment of N zones (no control systems) and reports its throughput
+    // --campaign runs N randomized fault injection scenarios in virtual time on --workers threads
+    //   (default: all cores), each --duration-s long (default 60 s), and reports detection and interlock statistics
+    public static void main(String[] args) throws InterruptedException, InvocationTargetException, IOException { 	
+    	String channelConfig = null;
+    	List<String> filters = new ArrayList<>();
+    	File scenarioFile = null;
+    	for (String arg : args) {
+    		if (arg.startsWith("--channels=")) {
+    			channelConfig = new String(Files.readAllBytes(Paths.get(arg.substring("--channels=".length()))));
+    		} else if (arg.startsWith("--filter=")) {
+    			filters.add(arg.substring("--filter=".length()));
+    		} else if (arg.startsWith("--scenario=")) {
+    			scenarioFile = new File(arg.substring("--scenario=".length()));
+    		}
+    	}
+    	
+    	// every option is parsed before anything runs, whatever their order
+    	ScenarioFile scenario = null;
+    	if (scenarioFile != null) {
+    		if (scenarioFile.isDirectory()) {
+    			scenarioLibrary(scenarioFile, args, channelConfig, filters);
+    			return;
+    		}
+    		scenario = ScenarioFile.load(scenarioFile);
+    	}
+    	
+    	for (String arg : args) {
+    		if (arg.startsWith("--replay=")) {
+    			replay(new File(arg.substring("--replay=".length())), args, channelConfig, filters);
+    			return;
+    		} else if (arg.startsWith("--campaign=")) {
+    			campaign(Integer.parseInt(arg.substring("--campaign=".length())), args, channelConfig);
+    			return;
+    		} else if (arg.startsWith("--zones=")) {
+    			zones(Integer.parseInt(arg.substring("--zones=".length())), args, scenario);
+    			return;
+    		}
+    	}
+    	
+    	boolean virtual = false;
+    	boolean dispatched = false;
+    	boolean spinMargin = false;
+    	for (String arg : args) {
+    		if (arg.equals("--virtual")) virtual = true;
+    		else if (arg.startsWith("--dispatcher=")) dispatched = true;
+    		else if (arg.startsWith("--spin-margin-us=")) spinMargin = true;
+    	}
+    	// the release timer only paces an environment updater running on its own thread
+    	if (spinMargin && (virtual || dispatched)) {
+    		throw new IllegalArgumentException("--spin-margin-us has no effect with " + (virtual ? "--virtual" : "--dispatcher")
+    				+ ", the environment updater is released by the " + (virtual ? "scheduler" : "dispatcher"));
+    	}
+    	int durationS = parseIntArg(args, "--duration-s=", defaultDurationS(scenario));
+    	int sectionCount = parseIntArg(args, "--sections=", 1);
+    	
+    	// virtual time runs everything on the scheduler, no dispatcher
+    	DiscreteEventScheduler scheduler = virtual ? new DiscreteEventScheduler() : null;
+    	SectionContext.Resources resources = virtual
+    			? SectionContext.Resources.virtual(scheduler)
+    			: SectionContext.Resources.realTime(createDispatcher(args));
     	
-    	EnvironmentState.initialize(controlSystem);
+    	SectionContext[] sections = new SectionContext[sectionCount];
+    	for (int i = 0; i < sectionCount; i++) {
+    		String name = sectionCount == 1 ? "session" : String.format("section-%03d", i);
+    		sections[i] = createSection(name, resources, args, channelConfig, filters, sectionCount > 1, scenario);
+    		// only the first section reports on the console
+    		if (i > 0) sections[i].getControlSystem().setConsole(QUIET);
+    	}
     	
-    	// Start environment updater thread
-    	PeriodicTask envUpdateTask = new PeriodicTask(ENVIROMENT_UPDATE_PERIOD_MS, ()-> EnvironmentState.getInstance().update(ENVIROMENT_UPDATE_PERIOD_MS), 8);
-    	envUpdateTask.start();
+    	if (virtual) {
+    		runVirtual(sections, resources, scheduler, durationS);
+    		resources.shutdown();
+    		return;
+    	}
 
     	
+    	// GUI of the first section, the others run headless
+    	SectionContext shown = sections[0];
     	// Create GUI on the EDT. Use AtomicReference so we can modify the reference inside lambda
     	AtomicReference<EnvGUI> guiRef = new AtomicReference<>();
     	SwingUtilities.invokeAndWait(() -> 
-    	    guiRef.set(new EnvGUI(controlSystem))
+    	    guiRef.set(new EnvGUI(shown.getControlSystem(), sectionCount == 1
+    	    		? "Environment Control System" : "Environment Control System - " + shown.getName()))
     	);
     	EnvGUI gui = guiRef.get();  // safe reference after invokeAndWait completes
 
 
-        // Start GUI water level updater thread
-        new Thread(() -> {
-            while (true) {
-                try {
-                    float waterLevel = EnvironmentState.getInstance().getWaterLevel();
-                    gui.updateWaterLevel(waterLevel, 0, 100);
-                    Thread.sleep(250);
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        }).start();
-    	
-        controlSystem.setGui(gui);
-        controlSystem.start();
-        
-        // Run control system for 50s
-        controlSystem.join(20_000);
-        if (controlSystem.isAlive()) {
-            controlSystem.interrupt();
+        // the GUI pulls the water level from the environment once per frame
+        shown.getControlSystem().setGui(gui);
+        for (SectionContext section : sections) {
+        	section.start();
         }
-        controlSystem.join();
+        printAnalysis(resources, false);
         
-        // Stop environment running
-    	envUpdateTask.interrupt();
+        // Run the sections for the configured duration
+        Thread.sleep(durationS * 1000L);
         
+        for (SectionContext section : sections) {
+        	section.stop();
+        }
+        printAnalysis(resources, true);
+    	resources.shutdown();
+    	if (sectionCount > 1) printSections(sections);
+    }
+    
+    // Section with the command line configuration applied, not started yet
+    private static SectionContext createSection(String name, SectionContext.Resources resources, String[] args,
+    		String channelConfig, List<String> filters, boolean multiSection, ScenarioFile scenario) throws IOException {
+    	SectionContext section = new SectionContext(name, resources);
+    	if (channelConfig != null) {
+    		section.declareChannels(channelConfig);
+    	}
+    	if (scenario != null) {
+    		scenario.applyTo(section.getEnvironment());
+    	}
+    	applyFilters(section.getMcu(), filters);
+    	
+    	ControlSystem controlSystem = section.getControlSystem();
+    	controlSystem.setScanMode(parseIntArg(args, "--scan-ms=", 0));
+    	for (String arg : args) {
+    		if (arg.startsWith("--event-log=")) {
+    			String path = arg.substring("--event-log=".length());
+    			controlSystem.getEventBus().addConsumer("file-log", new FileLogConsumer(multiSection ? path + "." + name : path, true));
+    		} else if (arg.equals("--env-events")) {
+    			section.setEventDrivenEnvironment(true);
+    		} else if (arg.startsWith("--record=")) {
+    			// sections share the directory, one recording per section name
+    			controlSystem.getEventBus().addConsumer("recorder", new BinaryRecorder(new File(arg.substring("--record=".length())),
+    					name, BinaryRecorder.DEFAULT_SEGMENT_BYTES));
+    		}
+    	}
+    	section.getEnvUpdateTask().setReleaseTimer(createReleaseTimer(args));
+    	return section;
+    }
+    
+    // Schedulability of the tasks of every section, they share the CPU: configured budgets once
+    // the sections are started, measured WCETs once they are stopped
+    private static void printAnalysis(SectionContext.Resources resources, boolean measured) {
+    	int count = resources.getSectionCount();
+    	System.out.println((measured ? "Schedulability analysis (measured WCETs" : "Startup schedulability analysis (configured budgets")
+    			+ (count > 1 ? ", tasks of all " + count + " sections" : "") + "):");
+    	// in virtual time the tasks run in zero time, every measured WCET is 0
+    	if (measured && resources.getScheduler() != null) System.out.println("n/a in virtual time");
+    	else System.out.print(resources.analyseSchedulability(measured));
+    }
+    
+    // Run headless in virtual time on this thread, as fast as the work allows
+    private static void runVirtual(SectionContext[] sections, SectionContext.Resources resources,
+    		DiscreteEventScheduler scheduler, int durationS) {
+    	for (SectionContext section : sections) {
+    		section.start();
+    	}
+    	printAnalysis(resources, false);
+    	
+    	long wallStart = System.nanoTime();
+    	long events = scheduler.runUntil(durationS * 1_000_000_000L);
+    	double wallMs = (System.nanoTime() - wallStart) / 1_000_000.0;
+    	
+    	for (SectionContext section : sections) {
+    		section.stop();
+    	}
+    	printAnalysis(resources, true);
+    	if (sections.length > 1) printSections(sections);
+    	long environmentRuns = 0;
+    	for (SectionContext section : sections) {
+    		environmentRuns += section.getEnvironment().isEventDriven()
+    				? section.getEnvironment().getProbeEvents() : section.getEnvUpdateTask().getExecTimeHistogram().getCount();
+    	}
+    	System.out.printf("Simulated %d s%s in %.1f ms of wall clock time (%d events, %d environment updates)%n", durationS,
+    			sections.length > 1 ? " of " + sections.length + " sections" : "", wallMs, events, environmentRuns);
+    }
+    
+    private static void printSections(SectionContext[] sections) {
+    	for (SectionContext section : sections) {
+    		System.out.println(section);
+    	}
+    }
+    
+    // filters as "<channel id>:<spec>"
+    private static void applyFilters(MCU mcu, List<String> filters) {
+    	for (String filter : filters) {
+    		int sep = filter.indexOf(':');
+    		mcu.setFilterSpec(Integer.parseInt(filter.substring(0, sep)), filter.substring(sep + 1));
+    	}
+    }
+    
+    // Replay a recording headless, prints the decision diff
+    private static void replay(File recording, String[] args, String channelConfig, List<String> filters) throws IOException {
+    	double speed = 1;
+    	String name = "session";
+    	for (String arg : args) {
+    		if (arg.startsWith("--replay-speed=")) {
+    			String value = arg.substring("--replay-speed=".length());
+    			speed = value.equals("max") ? ReplayEngine.MAX_SPEED : Double.parseDouble(value);
+    		} else if (arg.startsWith("--replay-section=")) {
+    			name = arg.substring("--replay-section=".length());
+    		}
+    	}
+    	
+    	MCU mcu = new MCU();
+    	if (channelConfig != null) {
+    		mcu.declareChannels(new StringReader(channelConfig));
+    	}
+    	applyFilters(mcu, filters);
+    	System.out.println("Replaying " + recording + " " + name + (speed > 0 ? " at " + speed + "x" : " at max speed"));
+    	System.out.print(new ReplayEngine(recording, name, speed, mcu).run());
+    	mcu.shutdown();
+    }
+    
+    // Run a fault injection campaign headless, prints the merged report
+    private static void campaign(int scenarios, String[] args, String channelConfig) {
+    	long seed = 1;
+    	for (String arg : args) {
+    		if (arg.startsWith("--campaign-seed=")) {
+    			seed = Long.parseLong(arg.substring("--campaign-seed=".length()));
+    		}
+    	}
+    	int workers = parseIntArg(args, "--workers=", Runtime.getRuntime().availableProcessors());
+    	int durationS = parseIntArg(args, "--duration-s=", FaultCampaign.DEFAULT_SCENARIO_DURATION_S);
+    	
+    	System.out.printf("Running %d fault scenarios of %d s (seed %d) on %d workers%n", scenarios, durationS, seed, workers);
+    	long wallStart = System.nanoTime();
+    	FaultCampaign.Stats stats = new FaultCampaign(scenarios, seed, durationS, channelConfig).run(workers);
+    	System.out.print(stats);
+    	System.out.printf("Wall clock time %.1f s%n", (System.nanoTime() - wallStart) / 1e9);
+    }
+    
+    // Step a batch of zones headless at the environment period, pumps follow the water level
+    // crossings unless CH4 is over the limit
+    private static void zones(int zoneCount, String[] args, ScenarioFile scenario) {
+    	int durationS = parseIntArg(args, "--duration-s=", defaultDurationS(scenario));
+    	int workers = parseIntArg(args, "--workers=", Runtime.getRuntime().availableProcessors());
+    	
+    	ZoneBatch batch = new ZoneBatch(zoneCount);
+    	ForkJoinPool pool = workers > 1 ? new ForkJoinPool(workers) : null;
+    	batch.setPool(pool);
+    	
+    	// the scenario or a few time shifted variants of the default profiles, every zone with its own gains and inflow
+    	int[] sets = scenario != null ? new int[] { scenario.addTo(batch) } : new int[] { 0,
+    			batch.addSignalSet(t -> EnvConfig.coConcentrationFunction(t - 5000), t -> EnvConfig.ch4ConcentrationFunction(t - 5000), t -> EnvConfig.airFlowFunction(t - 1000)),
+    			batch.addSignalSet(t -> EnvConfig.coConcentrationFunction(t - 11000), t -> EnvConfig.ch4ConcentrationFunction(t - 20000), t -> EnvConfig.airFlowFunction(t + 3000)) };
+    	SplittableRandom rnd = new SplittableRandom(zoneCount);
+    	for (int z = 0; z < zoneCount; z++) {
+    		batch.setZoneSignals(z, sets[rnd.nextInt(sets.length)], (float) rnd.nextDouble(0.6, 1.4), (float) rnd.nextDouble(0.6, 1.4));
+    		batch.setWaterFlows(z, (float) rnd.nextDouble(0.5, 1.5), EnvConfig.PUMP_WATER_FLOW);
+    	}
+    	
+    	long[] raised = new long[ZoneBatch.CONDITION_NAMES.length];
+    	long ticks = durationS * 1000L / ENVIROMENT_UPDATE_PERIOD_MS;
+    	long crossingCount = 0;
+    	long wallStart = System.nanoTime();
+    	for (long tick = 0; tick < ticks; tick++) {
+    		ZoneBatch.Crossings crossings = batch.step(ENVIROMENT_UPDATE_PERIOD_MS);
+    		crossingCount += crossings.size();
+    		for (int i = 0; i < crossings.size(); i++) {
+    			int zone = crossings.zone(i);
+    			int condition = crossings.condition(i);
+    			if (!crossings.raised(i)) {
+    				if (condition == ZoneBatch.CH4_HIGH && (batch.getConditions(zone) & 1 << ZoneBatch.WATER_HIGH) != 0) batch.setPumpOn(zone, true);
+    				continue;
+    			}
+    			raised[condition]++;
+    			if (condition == ZoneBatch.WATER_HIGH && (batch.getConditions(zone) & 1 << ZoneBatch.CH4_HIGH) == 0) batch.setPumpOn(zone, true);
+    			else if (condition == ZoneBatch.WATER_LOW || condition == ZoneBatch.CH4_HIGH) batch.setPumpOn(zone, false);
+    		}
+    	}
+    	double wallMs = (System.nanoTime() - wallStart) / 1_000_000.0;
+    	if (pool != null) pool.shutdown();
+    	
+    	System.out.printf("Stepped %d zones for %d s at %d ms (%d ticks) in %.1f ms: %.1f ns per zone step, %.0fx real time%n",
+    			zoneCount, durationS, ENVIROMENT_UPDATE_PERIOD_MS, ticks, wallMs,
+    			wallMs * 1_000_000.0 / ((double) ticks * zoneCount), durationS * 1000.0 / wallMs);
+    	StringBuilder sb = new StringBuilder("Crossings: " + crossingCount + " total, raised");
+    	for (int c = 0; c < raised.length; c++) {
+    		sb.append(' ').append(ZoneBatch.CONDITION_NAMES[c]).append('=').append(raised[c]);
+    	}
+    	System.out.println(sb);
+    }
+    
+    // Run every scenario (*.scn) of a directory headless in virtual time for its own duration,
+    // one status line per scenario
+    private static void scenarioLibrary(File directory, String[] args, String channelConfig, List<String> filters) throws IOException {
+    	File[] files = directory.listFiles((dir, name) -> name.endsWith(".scn"));
+    	if (files == null || files.length == 0) {
+    		throw new IOException("No .scn scenarios in " + directory);
+    	}
+    	Arrays.sort(files);
+    	
+    	long wallStart = System.nanoTime();
+    	double simulatedMs = 0;
+    	for (File file : files) {
+    		ScenarioFile scenario = ScenarioFile.load(file);
+    		DiscreteEventScheduler scheduler = new DiscreteEventScheduler();
+    		SectionContext section = createSection(scenario.getName(), SectionContext.Resources.virtual(scheduler),
+    				args, channelConfig, filters, true, scenario);
+    		section.getControlSystem().setConsole(QUIET);
+    		int[] raised = new int[1];
+    		section.getControlSystem().getAlarmState().addListener((alarmId, up, timestampNs) -> {
+    			if (up) raised[0]++;
+    		});
+    		
+    		section.start();
+    		scheduler.runUntil((long) (scenario.getDurationMs() * 1_000_000.0));
+    		section.stop();
+    		simulatedMs += scenario.getDurationMs();
+    		System.out.println(section + ", " + raised[0] + " alarms raised");
+    	}
+    	System.out.printf("Ran %d scenarios, %.1f s simulated in %.1f ms of wall clock time%n",
+    			files.length, simulatedMs / 1000, (System.nanoTime() - wallStart) / 1_000_000.0);
+    }
+    
+    private static int defaultDurationS(ScenarioFile scenario) {
+    	return scenario != null ? (int) Math.ceil(scenario.getDurationMs() / 1000) : 20;
+    }
+    
+    private static int parseIntArg(String[] args, String prefix, int defaultValue) {
+    	for (String arg : args) {
+    		if (arg.startsWith(prefix)) {
+    			return Integer.parseInt(arg.substring(prefix.length()));
+    		}
+    	}
+    	return defaultValue;
+    }
+    
+    private static ReleaseTimer createReleaseTimer(String[] args) {
+    	for (String arg : args) {
+    		if (arg.startsWith("--spin-margin-us=")) {
+    			long marginUs = Long.parseLong(arg.substring("--spin-margin-us=".length()));
+    			return ReleaseTimer.parkSpin(marginUs * 1000);
+    		}
+    	}
+    	return ReleaseTimer.SLEEP;
+    }
+    
+    private static TaskDispatcher createDispatcher(String[] args) {
+    	TaskDispatcher.Policy policy = null;
+    	int workers = parseIntArg(args, "--workers=", 1);
+    	
+    	for (String arg : args) {
+    		if (arg.startsWith("--dispatcher=")) {
+    			policy = TaskDispatcher.parsePolicy(arg.substring("--dispatcher=".length()));
+    		}
+    	}
+    	
+    	if (policy == null) return null;
+    	
+    	System.out.println("Using " + policy + " dispatcher with " + workers + " worker(s)");
+    	return new TaskDispatcher(policy, workers);
     }
 
-	
-	public static Simulator getInstance() {
-		return Simulator.instance;
-	}
-	
-	
-	private static Simulator instance;
-	
-	private Simulator() {}
-	
 }
@@ -0,0 +1,303 @@
+package com.prv;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Batched environment of many mine zones (struct of arrays), stepped in one pass per tick.
+// Water levels, flows and gas concentrations live in primitive arrays indexed by zone, every
+// quantity is updated for all zones in a plain counted loop (no calls, no allocation) so the
+// JIT can vectorize it. Signals are shared: every zone uses one of a few signal sets, which are
+// evaluated once per tick, and scales them with its own gains.
+// Zones are processed in fixed chunks, in parallel on a fork/join pool for large zone counts.
+// Each chunk collects its threshold crossings separately, the chunk lists are then concatenated
+// in zone order, so the crossing list of a tick does not depend on the parallelism.
+public class ZoneBatch {
+
+    // threshold conditions, bit index in the per zone condition mask
+    public static final int CO_HIGH = 0;
+    public static final int CH4_HIGH = 1;
+    public static final int AIR_FLOW_LOW = 2;
+    public static final int WATER_HIGH = 3;
+    public static final int WATER_LOW = 4;
+    public static final String[] CONDITION_NAMES = { "CO_HIGH", "CH4_HIGH", "AIR_FLOW_LOW", "WATER_HIGH", "WATER_LOW" };
+
+    public static final int MAX_ZONES = 1 << 27; // zone id has to fit a packed crossing
+
+    static final int CHUNK_ZONES = 4096;
+    static final int PARALLEL_MIN_ZONES = 4 * CHUNK_ZONES;
+
+    // Threshold crossings of one tick, packed zone << 4 | condition << 1 | raised
+    public static final class Crossings {
+        private int[] entries = new int[64];
+        private int size = 0;
+        private float timeMs;
+
+        public int size() {
+            return size;
+        }
+
+        public float getTimeMs() {
+            return timeMs;
+        }
+
+        public int zone(int i) {
+            return entries[i] >>> 4;
+        }
+
+        public int condition(int i) {
+            return (entries[i] >>> 1) & 0x7;
+        }
+
+        // true if the condition started to hold, false if it stopped
+        public boolean raised(int i) {
+            return (entries[i] & 1) != 0;
+        }
+
+        void add(int zone, int condition, boolean raised) {
+            if (size == entries.length) entries = Arrays.copyOf(entries, size * 2);
+            entries[size++] = zone << 4 | condition << 1 | (raised ? 1 : 0);
+        }
+
+        void addAll(Crossings o) {
+            if (size + o.size > entries.length) entries = Arrays.copyOf(entries, Math.max(entries.length * 2, size + o.size));
+            System.arraycopy(o.entries, 0, entries, size, o.size);
+            size += o.size;
+        }
+
+        void clear(float timeMs) {
+            size = 0;
+            this.timeMs = timeMs;
+        }
+    }
+
+    private final int zoneCount;
+
+    // zone table, index = zone id
+    private final float[] waterLevel;
+    private final float[] inflow;       // spontaneous water flow
+    private final float[] pumpFlow;     // flow of the pump when running
+    private final float[] pumpRate;     // current pump flow, 0 when off
+    private final boolean[] pumpOn;
+    private final boolean[] pumpWorking;
+    private final float[] co;
+    private final float[] ch4;
+    private final float[] airFlow;
+    private final int[] signalSet;
+    private final float[] gasGain;
+    private final float[] airGain;
+    private final byte[] conditions;    // condition mask after the last tick
+
+    // shared signal sets, evaluated once per tick
+    private SignalFunction[] coSignals = { EnvConfig.CO_CONCENTRATION_SIGNAL };
+    private SignalFunction[] ch4Signals = { EnvConfig.CH4_CONCENTRATION_SIGNAL };
+    private SignalFunction[] airSignals = { EnvConfig.AIR_FLOW_SIGNAL };
+    private float[] coValues = new float[1];
+    private float[] ch4Values = new float[1];
+    private float[] airValues = new float[1];
+
+    private final Crossings[] chunkCrossings;
+    private final Crossings crossings = new Crossings();
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private float timeMs = 0;
+    private float dtMs;
+
+    // every zone starts like EnvironmentState, on the default signal set with gains 1
+    public ZoneBatch(int zoneCount) {
+        if (zoneCount <= 0 || zoneCount > MAX_ZONES) {
+            throw new IllegalArgumentException("Zone count out of range: " + zoneCount);
+        }
+        this.zoneCount = zoneCount;
+        waterLevel = new float[zoneCount];
+        inflow = new float[zoneCount];
+        pumpFlow = new float[zoneCount];
+        pumpRate = new float[zoneCount];
+        pumpOn = new boolean[zoneCount];
+        pumpWorking = new boolean[zoneCount];
+        co = new float[zoneCount];
+        ch4 = new float[zoneCount];
+        airFlow = new float[zoneCount];
+        signalSet = new int[zoneCount];
+        gasGain = new float[zoneCount];
+        airGain = new float[zoneCount];
+        conditions = new byte[zoneCount];
+
+        Arrays.fill(waterLevel, EnvConfig.HIGH_WATER_LEVEL);
+        Arrays.fill(inflow, EnvConfig.WATER_FILLING_RATE);
+        Arrays.fill(pumpFlow, EnvConfig.PUMP_WATER_FLOW);
+        Arrays.fill(pumpWorking, true);
+        Arrays.fill(co, EnvConfig.INITIAL_CO_CONCENTRATION);
+        Arrays.fill(ch4, EnvConfig.INITIAL_CH4_CONCENTRATION);
+        Arrays.fill(airFlow, EnvConfig.INITIAL_AIR_FLOW);
+        Arrays.fill(gasGain, 1f);
+        Arrays.fill(airGain, 1f);
+
+        chunkCrossings = new Crossings[(zoneCount + CHUNK_ZONES - 1) / CHUNK_ZONES];
+        for (int c = 0; c < chunkCrossings.length; c++) chunkCrossings[c] = new Crossings();
+    }
+
+    public int getZoneCount() {
+        return zoneCount;
+    }
+
+    public float getTimeMs() {
+        return timeMs;
+    }
+
+    // pool stepping large batches (common pool by default), null -> always on the caller thread
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Add a shared signal set, returns its index (0 is the EnvConfig default set)
+    public synchronized int addSignalSet(SignalFunction co, SignalFunction ch4, SignalFunction airFlow) {
+        int index = coSignals.length;
+        coSignals = Arrays.copyOf(coSignals, index + 1);
+        ch4Signals = Arrays.copyOf(ch4Signals, index + 1);
+        airSignals = Arrays.copyOf(airSignals, index + 1);
+        coSignals[index] = co;
+        ch4Signals[index] = ch4;
+        airSignals[index] = airFlow;
+        coValues = new float[index + 1];
+        ch4Values = new float[index + 1];
+        airValues = new float[index + 1];
+        return index;
+    }
+
+    // zone gases are gasGain times the set's CO and CH4 signals, air flow airGain times its air flow signal
+    public void setZoneSignals(int zone, int set, float gasGain, float airGain) {
+        if (set < 0 || set >= coSignals.length) {
+            throw new IllegalArgumentException("No signal set " + set);
+        }
+        signalSet[zone] = set;
+        this.gasGain[zone] = gasGain;
+        this.airGain[zone] = airGain;
+    }
+
+    public void setWaterFlows(int zone, float inflow, float pumpFlow) {
+        this.inflow[zone] = inflow;
+        this.pumpFlow[zone] = pumpFlow;
+        if (pumpOn[zone]) pumpRate[zone] = pumpFlow;
+    }
+
+    // like EnvironmentState, a broken pump keeps its current state
+    public void setPumpOn(int zone, boolean on) {
+        if (!pumpWorking[zone]) return;
+        pumpOn[zone] = on;
+        pumpRate[zone] = on ? pumpFlow[zone] : 0f;
+    }
+
+    public void setPumpWorkingProperly(int zone, boolean working) {
+        pumpWorking[zone] = working;
+    }
+
+    public boolean isPumpOn(int zone) {
+        return pumpOn[zone];
+    }
+
+    public float getWaterLevel(int zone) {
+        return waterLevel[zone];
+    }
+
+    public float getCoConcentration(int zone) {
+        return co[zone];
+    }
+
+    public float getCh4Concentration(int zone) {
+        return ch4[zone];
+    }
+
+    public float getAirFlow(int zone) {
+        return airFlow[zone];
+    }
+
+    // conditions holding after the last tick, bit i = condition i
+    public int getConditions(int zone) {
+        return conditions[zone];
+    }
+
+    // Move every zone forward by dtMs, returns the crossings of this tick (reused by the next one)
+    public Crossings step(float dtMs) {
+        this.dtMs = dtMs;
+        timeMs += dtMs;
+
+        SignalFunction[] coS = coSignals, ch4S = ch4Signals, airS = airSignals;
+        for (int s = 0; s < coS.length; s++) {
+            coValues[s] = coS[s].valueAt(timeMs);
+            ch4Values[s] = ch4S[s].valueAt(timeMs);
+            airValues[s] = airS[s].valueAt(timeMs);
+        }
+
+        int chunks = chunkCrossings.length;
+        if (pool != null && zoneCount >= PARALLEL_MIN_ZONES && pool.getParallelism() > 1) {
+            pool.invoke(new ChunkRange(0, chunks));
+        } else {
+            for (int c = 0; c < chunks; c++) stepChunk(c);
+        }
+
+        crossings.clear(timeMs);
+        for (int c = 0; c < chunks; c++) crossings.addAll(chunkCrossings[c]);
+        return crossings;
+    }
+
+    private final class ChunkRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        ChunkRange(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                stepChunk(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkRange(from, mid), new ChunkRange(mid, to));
+        }
+    }
+
+    private void stepChunk(int chunk) {
+        int from = chunk * CHUNK_ZONES;
+        int to = Math.min(zoneCount, from + CHUNK_ZONES);
+        float dtS = dtMs * 0.001f;
+
+        // water balance
+        for (int z = from; z < to; z++) {
+            float level = waterLevel[z] + (inflow[z] + pumpRate[z]) * dtS;
+            waterLevel[z] = Math.min(100f, Math.max(0f, level));
+        }
+
+        // gases and air flow from the shared signal values
+        for (int z = from; z < to; z++) {
+            int s = signalSet[z];
+            co[z] = coValues[s] * gasGain[z];
+            ch4[z] = ch4Values[s] * gasGain[z];
+            airFlow[z] = airValues[s] * airGain[z];
+        }
+
+        // thresholds, only zones whose condition mask changed emit crossings
+        Crossings out = chunkCrossings[chunk];
+        out.clear(timeMs);
+        for (int z = from; z < to; z++) {
+            int mask = (co[z] > EnvConfig.CO_CONCENTRATION_LIMIT ? 1 << CO_HIGH : 0)
+                    | (ch4[z] > EnvConfig.CH4_CONCENTRATION_LIMIT ? 1 << CH4_HIGH : 0)
+                    | (airFlow[z] < EnvConfig.AIR_FLOW_LIMIT ? 1 << AIR_FLOW_LOW : 0)
+                    | (waterLevel[z] >= EnvConfig.HIGH_WATER_LEVEL ? 1 << WATER_HIGH : 0)
+                    | (waterLevel[z] <= EnvConfig.LOW_WATER_LEVEL ? 1 << WATER_LOW : 0);
+            int changed = mask ^ conditions[z];
+            if (changed == 0) continue;
+
+            conditions[z] = (byte) mask;
+            for (int c = Integer.numberOfTrailingZeros(changed); c < 32; c = Integer.numberOfTrailingZeros(changed)) {
+                out.add(z, c, (mask & 1 << c) != 0);
+                changed &= changed - 1;
+            }
+        }
+    }
+}
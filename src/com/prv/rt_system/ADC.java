@@ -1,11 +1,12 @@
 package com.prv.rt_system;
 
-import java.util.concurrent.*;
-import java.util.function.Supplier;
+import java.lang.management.ManagementFactory;
 
 public class ADC {
-    public ADC(Supplier<Float> signalSource) {
+    // conversionTimer is shared by all ADCs of one MCU
+    public ADC(FloatSupplier signalSource, TimerWheel conversionTimer) {
         this.signalSource = signalSource;
+        this.conversionTimer = conversionTimer;
     }
 
     // device malfunctioning simulation
@@ -30,13 +31,32 @@ public class ADC {
         dataReady = false;
         
         // capture current input value and start conversion
-        value = signalSource.get();
+        value = signalSource.getAsFloat();
         
-        scheduler.schedule(() -> {
-        	// make the data available only after conversion delay
-            dataReady = true;
-            conversionInProgress = false;
-        }, CONVERSION_DELAY_MS, TimeUnit.MILLISECONDS);
+        conversionTimer.schedule(conversionDone, CONVERSION_DELAY_MS);
+    }
+
+    // Start continuous scan mode: the input is sampled every samplePeriodMs on the shared
+    // conversion timer and written with its timestamp into the sample ring
+    public void startContinuous(int samplePeriodMs, int ringCapacity) {
+        if (sampleRing != null) return;
+
+        this.samplePeriodMs = samplePeriodMs;
+        this.sampleRing = new SampleRing(ringCapacity);
+        conversionTimer.schedule(scanSample, samplePeriodMs);
+    }
+
+    public void stopContinuous() {
+        scanning = false;
+    }
+
+    public boolean isContinuous() {
+        return sampleRing != null;
+    }
+
+    // Ring buffer filled in scan mode, null in single shot mode
+    public SampleRing getSampleRing() {
+        return sampleRing;
     }
 
     // Returns true if data is ready for reading
@@ -57,18 +77,39 @@ public class ADC {
         return value;
     }
 
-    public void shutdown() {
-        scheduler.shutdown();
-    }
-    
     private static final int CONVERSION_DELAY_MS = 50;
 	
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final Supplier<Float> signalSource; // function to get current signal value
+    private final TimerWheel conversionTimer;
+    private final TimerWheel.Timeout conversionDone = new TimerWheel.Timeout() {
+        @Override
+        protected void onExpire() {
+        	// make the data available only after conversion delay
+            dataReady = true;
+            conversionInProgress = false;
+        }
+    };
+    private final FloatSupplier signalSource; // function to get current signal value
     private volatile boolean conversionInProgress = false;
     private volatile boolean dataReady = false;
     private volatile float value = 0;
     
+    // continuous scan mode
+    private volatile SampleRing sampleRing = null;
+    private volatile boolean scanning = true;
+    private int samplePeriodMs;
+    private final TimerWheel.Timeout scanSample = new TimerWheel.Timeout() {
+        @Override
+        protected void onExpire() {
+            if (!scanning) return;
+            
+            // broken converter delivers no samples
+            if (ADCworksProperly) {
+                sampleRing.publish(signalSource.getAsFloat(), conversionTimer.nanoTime());
+            }
+            conversionTimer.schedule(this, samplePeriodMs);
+        }
+    };
+    
     private volatile boolean ADCworksProperly = true;
     
     // ADC test
@@ -76,11 +117,12 @@ public class ADC {
         // Shared "signals" updated by another thread
         final float[] signals = {100, 200, 300, 400};
 
-        // Create 4 ADCs, each bound to one signal
-        ADC adc1 = new ADC(() -> signals[0]);
-        ADC adc2 = new ADC(() -> signals[1]);
-        ADC adc3 = new ADC(() -> signals[2]);
-        ADC adc4 = new ADC(() -> signals[3]);
+        // Create 4 ADCs, each bound to one signal, sharing one conversion timer
+        TimerWheel timer = new TimerWheel(1, 128);
+        ADC adc1 = new ADC(() -> signals[0], timer);
+        ADC adc2 = new ADC(() -> signals[1], timer);
+        ADC adc3 = new ADC(() -> signals[2], timer);
+        ADC adc4 = new ADC(() -> signals[3], timer);
 
         // Thread to simulate changing signals
         Thread signalThread = new Thread(() -> {
@@ -116,12 +158,59 @@ public class ADC {
                     adc4.getValue());
         }
 
+        // Continuous scan mode: drain all samples taken since the last read
+        adc1.startContinuous(10, 64);
+        SampleRing.Reader reader = adc1.getSampleRing().newReader();
+        float[] values = new float[64];
+        long[] timestamps = new long[64];
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(100);
+            int n = adc1.getSampleRing().drain(reader, values, timestamps);
+            System.out.printf("ADC1 scan: %d samples, first=%f, last=%f%n", n, values[0], values[n - 1]);
+        }
+        adc1.stopContinuous();
+
+        // Allocation test: the conversion hot path must not allocate
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long mainId = Thread.currentThread().getId();
+        final int conversions = 20;
+
+        // single shot conversions, value is captured on the calling thread
+        convert(adc2, conversions); // warm up
+        long before = threads.getThreadAllocatedBytes(mainId);
+        convert(adc2, conversions);
+        long singleShotBytes = threads.getThreadAllocatedBytes(mainId) - before;
+
+        // scan mode, samples are taken on the timer thread
+        adc3.startContinuous(5, 64);
+        Thread.sleep(100); // warm up
+        before = threads.getThreadAllocatedBytes(timer.getThreadId());
+        Thread.sleep(conversions * 5);
+        long scanBytes = threads.getThreadAllocatedBytes(timer.getThreadId()) - before;
+        adc3.stopContinuous();
+
+        System.out.printf("Allocated bytes: single shot=%d (%d conversions), scan=%d (%d samples)%n",
+                singleShotBytes, conversions, scanBytes, conversions);
+
         // Cleanup
-        adc1.shutdown();
-        adc2.shutdown();
-        adc3.shutdown();
-        adc4.shutdown();
+        timer.shutdown();
         signalThread.interrupt();
+
+        if (singleShotBytes != 0 || scanBytes != 0) {
+            System.out.println("ALLOCATION TEST FAILED: conversion path allocates");
+            System.exit(1);
+        }
+        System.out.println("Allocation test passed: 0 bytes per conversion");
+    }
+
+    private static void convert(ADC adc, int conversions) {
+        for (int i = 0; i < conversions; i++) {
+            adc.startConversion();
+            while (adc.getStatus() != ADCStatus.DATA_READY) {
+                Thread.onSpinWait();
+            }
+            adc.getValue();
+        }
     }
 }
 
@@ -0,0 +1,97 @@
+package com.prv.rt_system;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free set of active alarms, one bit per alarm id (any number of alarms, 64 per word).
+// Raise and clear are a single CAS on the alarm's word; listeners are notified only when
+// the bit actually changes, so calling raise/clear on every sample is cheap.
+public class AlarmState {
+
+    public interface TransitionListener {
+        void onAlarmTransition(int alarmId, boolean raised, long timestampNs);
+    }
+
+    private final int alarmCount;
+    private final SimClock clock;
+    private final AtomicLongArray words;
+    private final CopyOnWriteArrayList<TransitionListener> listeners = new CopyOnWriteArrayList<>();
+
+    public AlarmState(int alarmCount) {
+        this(alarmCount, SimClock.SYSTEM);
+    }
+
+    // clock stamps the transitions
+    public AlarmState(int alarmCount, SimClock clock) {
+        this.alarmCount = alarmCount;
+        this.clock = clock;
+        this.words = new AtomicLongArray((alarmCount + 63) >>> 6);
+    }
+
+    public void addListener(TransitionListener listener) {
+        listeners.add(listener);
+    }
+
+    public int getAlarmCount() {
+        return alarmCount;
+    }
+
+    // Set alarm bit, returns true if the alarm was not active before
+    public boolean raise(int alarmId) {
+        int w = alarmId >>> 6;
+        long bit = 1L << alarmId;
+        long old;
+        do {
+            old = words.get(w);
+            if ((old & bit) != 0) return false;
+        } while (!words.compareAndSet(w, old, old | bit));
+
+        notifyListeners(alarmId, true);
+        return true;
+    }
+
+    // Clear alarm bit, returns true if the alarm was active before
+    public boolean clear(int alarmId) {
+        int w = alarmId >>> 6;
+        long bit = 1L << alarmId;
+        long old;
+        do {
+            old = words.get(w);
+            if ((old & bit) == 0) return false;
+        } while (!words.compareAndSet(w, old, old & ~bit));
+
+        notifyListeners(alarmId, false);
+        return true;
+    }
+
+    public boolean isActive(int alarmId) {
+        return (words.get(alarmId >>> 6) & (1L << alarmId)) != 0;
+    }
+
+    public boolean isEmpty() {
+        for (int w = 0; w < words.length(); w++) {
+            if (words.get(w) != 0) return false;
+        }
+        return true;
+    }
+
+    // First active alarm id >= fromId, -1 if none; use to iterate the active alarms
+    public int nextActive(int fromId) {
+        if (fromId >= alarmCount) return -1;
+
+        int w = fromId >>> 6;
+        long word = words.get(w) & (-1L << fromId);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w >= words.length()) return -1;
+            word = words.get(w);
+        }
+    }
+
+    private void notifyListeners(int alarmId, boolean raised) {
+        long now = clock.nanoTime();
+        for (TransitionListener listener : listeners) {
+            listener.onAlarmTransition(alarmId, raised, now);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.prv.rt_system;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Append-only audit trail of samples, alarm transitions, pump commands and external inputs.
+// Every event becomes a fixed size binary record written into a memory mapped segment file,
+// segments roll over when full. Runs as an EventBus consumer, so control threads never touch
+// the files and nothing is formatted or allocated per record.
+//
+// Segment layout: 32 byte header, then RECORD_SIZE byte records
+//   header:  int magic, int version, int record size, int segment index, long first record seq,
+//            int flags (SESSION_START)
+//   record:  long seq, long timestampNs, float simTimeMs, float value,
+//            short channel, byte type (ControlEvent.Type ordinal + 1, 0 = empty), byte status/flag,
+//            int checksum
+// Records are numbered without gaps across segments. On open the last segment is scanned up to
+// the first record with a wrong sequence or checksum; only if data follows it (torn write of a
+// crash) the rest of the segment is zeroed. Every recorder then starts a new session in a fresh
+// segment flagged SESSION_START, so the runs recorded into one directory never share a segment
+// and a reader can tell them apart (recordings without flags hold a single session).
+public class BinaryRecorder implements EventConsumer {
+
+    static final int MAGIC = 0x4D524543; // "MREC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int FLAG_SESSION_START = 1;
+    static final int RECORD_SIZE = 32;
+    static final String SEGMENT_SUFFIX = ".rec";
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    private final File directory;
+    private final String prefix;
+    private final long segmentBytes;
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private int position;       // next write offset in the segment
+    private long nextSeq;       // sequence of the next record
+    private long recoveredRecords = 0;
+    private boolean tornTail = false;
+    private long writeErrors = 0;
+
+    public BinaryRecorder(File directory) throws IOException {
+        this(directory, "session", DEFAULT_SEGMENT_BYTES);
+    }
+
+    // segmentBytes is rounded down to whole records
+    public BinaryRecorder(File directory, String prefix, long segmentBytes) throws IOException {
+        if (segmentBytes < HEADER_SIZE + RECORD_SIZE || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size out of range: " + segmentBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create recording directory " + directory);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentBytes = HEADER_SIZE + (segmentBytes - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+
+        File[] existing = listSegments(directory, prefix);
+        if (existing.length == 0) {
+            openSegment(0, 0, true);
+        } else {
+            long firstSeq = recoverTail(existing[existing.length - 1]);
+            openSegment(existing.length, firstSeq, true);
+        }
+    }
+
+    public long getRecordCount() {
+        return nextSeq;
+    }
+
+    // records found intact in the last segment when the recorder was opened
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    // true if the last segment had a torn write behind its intact records
+    public boolean hadTornTail() {
+        return tornTail;
+    }
+
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    public long getWriteErrors() {
+        return writeErrors;
+    }
+
+    @Override
+    public void onEvent(ControlEvent event, long sequence, boolean endOfBatch) {
+        switch (event.type) {
+        case SAMPLE:
+            append(event, event.status);
+            break;
+        case ALARM:
+        case PUMP_COMMAND:
+            append(event, event.flag ? 1 : 0);
+            break;
+        case INPUT:
+            append(event, 0);
+            break;
+        case RATE:
+            break; // derived again from the recorded samples on replay
+        case LOG:
+        default:
+            break; // text stays in the log consumers
+        }
+    }
+
+    @Override
+    public void onShutdown() {
+        try {
+            close();
+        } catch (IOException e) {
+            System.err.println("Recorder close failed: " + e.getMessage());
+        }
+    }
+
+    public void close() throws IOException {
+        if (channel == null) return;
+        segment.force();
+        channel.close();
+        channel = null;
+        segment = null;
+    }
+
+    private void append(ControlEvent event, int statusOrFlag) {
+        if (segment == null) return;
+        if (position + RECORD_SIZE > segmentBytes) {
+            try {
+                rollOver();
+            } catch (IOException e) {
+                writeErrors++;
+                return;
+            }
+        }
+
+        int p = position;
+        long seq = nextSeq;
+        int simBits = Float.floatToRawIntBits(event.simTimeMs);
+        int valueBits = Float.floatToRawIntBits(event.value);
+        int packed = packTail(event.channel, event.type.ordinal() + 1, statusOrFlag);
+
+        segment.putLong(p, seq);
+        segment.putLong(p + 8, event.timestampNs);
+        segment.putInt(p + 16, simBits);
+        segment.putInt(p + 20, valueBits);
+        segment.putInt(p + 24, packed);
+        // checksum last, a record without a matching checksum is a torn write
+        segment.putInt(p + 28, checksum(seq, event.timestampNs, simBits, valueBits, packed));
+
+        position = p + RECORD_SIZE;
+        nextSeq = seq + 1;
+    }
+
+    private void rollOver() throws IOException {
+        close();
+        openSegment(segmentIndex + 1, nextSeq, false);
+    }
+
+    private void openSegment(int index, long firstSeq, boolean sessionStart) throws IOException {
+        File file = segmentFile(directory, prefix, index);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(8, RECORD_SIZE);
+        segment.putInt(12, index);
+        segment.putLong(16, firstSeq);
+        segment.putInt(24, sessionStart ? FLAG_SESSION_START : 0);
+        segment.force();
+
+        segmentIndex = index;
+        position = HEADER_SIZE;
+        nextSeq = firstSeq;
+    }
+
+    // Zero a torn tail of the previous run's last segment, returns the sequence to continue with
+    private long recoverTail(File file) throws IOException {
+        try (FileChannel previous = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = previous.size();
+            if (size < HEADER_SIZE + RECORD_SIZE) {
+                throw new IOException("Truncated segment " + file);
+            }
+            MappedByteBuffer last = previous.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            last.order(ByteOrder.LITTLE_ENDIAN);
+            if (last.getInt(0) != MAGIC || last.getInt(4) != VERSION || last.getInt(8) != RECORD_SIZE) {
+                throw new IOException("Not a recorder segment: " + file);
+            }
+
+            long firstSeq = last.getLong(16);
+            long seq = firstSeq;
+            int p = HEADER_SIZE;
+            while (p + RECORD_SIZE <= size && isValidRecord(last, p, seq)) {
+                p += RECORD_SIZE;
+                seq++;
+            }
+            recoveredRecords = seq - firstSeq;
+
+            // a clean shutdown leaves only zeros behind the last intact record
+            for (int i = p; i < size; i++) {
+                if (last.get(i) != 0) {
+                    tornTail = true;
+                    break;
+                }
+            }
+            if (tornTail) {
+                for (int i = p; i < size; i++) last.put(i, (byte) 0);
+                last.force();
+            }
+            return seq;
+        }
+    }
+
+    // ===== format helpers shared with RecordingReader =====
+
+    static File segmentFile(File directory, String prefix, int index) {
+        return new File(directory, String.format("%s-%06d%s", prefix, index, SEGMENT_SUFFIX));
+    }
+
+    // Segment files of a recording in index order
+    static File[] listSegments(File directory, String prefix) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix + "-") && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return new File[0];
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return files;
+    }
+
+    static boolean isValidRecord(MappedByteBuffer buffer, int p, long expectedSeq) {
+        long seq = buffer.getLong(p);
+        int packed = buffer.getInt(p + 24);
+        if (seq != expectedSeq || ((packed >>> 16) & 0xFF) == 0) return false;
+        return buffer.getInt(p + 28) == checksum(seq, buffer.getLong(p + 8),
+                buffer.getInt(p + 16), buffer.getInt(p + 20), packed);
+    }
+
+    static int packTail(int channel, int type, int statusOrFlag) {
+        return (channel & 0xFFFF) | (type & 0xFF) << 16 | (statusOrFlag & 0xFF) << 24;
+    }
+
+    static int checksum(long seq, long timestampNs, int simBits, int valueBits, int packed) {
+        long h = 0x9E3779B97F4A7C15L;
+        h = mix(h ^ seq);
+        h = mix(h ^ timestampNs);
+        h = mix(h ^ ((long) simBits << 32 | (valueBits & 0xFFFFFFFFL)));
+        h = mix(h ^ packed);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long mix(long h) {
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,9 @@
+package com.prv.rt_system;
+
+// Physical quantity measured by an MCU channel
+public enum ChannelType {
+	CO,
+	CH4,
+	AIR_FLOW,
+	WATER_FLOW
+}
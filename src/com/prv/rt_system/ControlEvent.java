@@ -0,0 +1,68 @@
+package com.prv.rt_system;
+
+// Preallocated slot of the EventBus ring, overwritten by producers and read by consumers.
+// Consumers must copy whatever they need before returning from onEvent.
+public class ControlEvent {
+
+    public enum Type {
+        SAMPLE,         // channel, value, status (ADCStatus ordinal)
+        ALARM,          // alarm id in channel, flag = raised
+        PUMP_COMMAND,   // flag = pump on
+        LOG,            // source, message (format with args when argCount > 0)
+        INPUT,          // external input id in channel (ControlSystem.ControlInput ordinal)
+        RATE            // channel, value = rate of change per second (rate of change filter)
+    }
+
+    public static final int MAX_ARGS = 5;
+
+    public Type type;
+    public int section; // EventBus section that published the event
+    public long timestampNs;
+    public float simTimeMs;
+
+    public int channel;
+    public float value;
+    public int status;
+    public boolean flag;
+
+    public String source;
+    public String message;
+    public int argCount;
+    public final float[] args = new float[MAX_ARGS];
+
+    void reset(Type type, int section, long timestampNs, float simTimeMs) {
+        this.type = type;
+        this.section = section;
+        this.timestampNs = timestampNs;
+        this.simTimeMs = simTimeMs;
+        this.channel = 0;
+        this.value = 0;
+        this.status = 0;
+        this.flag = false;
+        this.source = null;
+        this.message = null;
+        this.argCount = 0;
+    }
+
+    // Copy of every field of the other event (moving it between rings)
+    void copyFrom(ControlEvent other) {
+        reset(other.type, other.section, other.timestampNs, other.simTimeMs);
+        this.channel = other.channel;
+        this.value = other.value;
+        this.status = other.status;
+        this.flag = other.flag;
+        this.source = other.source;
+        this.message = other.message;
+        this.argCount = other.argCount;
+        System.arraycopy(other.args, 0, args, 0, MAX_ARGS);
+    }
+
+    // Log message text, formats the arguments (allocates, consumer side only)
+    public String formatMessage() {
+        if (argCount == 0) return message;
+
+        Object[] boxed = new Object[argCount];
+        for (int i = 0; i < argCount; i++) boxed[i] = args[i];
+        return String.format(message, boxed);
+    }
+}
@@ -1,9 +1,9 @@
 package com.prv.rt_system;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import com.prv.EnvConfig;
 import com.prv.EnvironmentState;
 import com.prv.rt_system.ADC.ADCStatus;
 
@@ -11,13 +11,165 @@ public class ControlSystem extends Thread {
 	
 	public static int READER_TASK_PERIOD_MS = 150;
 	
+	// configured WCET budgets for the startup schedulability analysis
+	public static double SENSOR_CHANNEL_WCET_BUDGET_MS = 0.5; // per processed channel
+	public static double LOGGER_TASK_WCET_BUDGET_MS = 5.0;
+	public static double PUMP_TASK_WCET_BUDGET_MS = 2.0;
+	
+	// events published by control tasks, consumed by GUI, file log and telemetry
+	public static final int EVENT_BUS_CAPACITY = 4096;
+	
+	// live schedulability analysis is logged every N logger periods (real time only)
+	private static final int LIVE_ANALYSIS_LOGGER_PERIODS = 10;
+	
     private boolean running = true;
     private PumpControlSubSys pumpControlSubSys = null;
     
-    private EnvGUI gui;
+    private TaskDispatcher dispatcher = null; // null -> every task runs on its own thread
+    
+    private final MCU mcu;
+    private final SimScheduler scheduler; // null -> tasks run on real time threads
+    private final SimClock clock;
+    private final EventBus events;
+    private final TelemetryConsumer telemetry;
+    
+    // simulated environment, attaches itself when created
+    private volatile EnvironmentState environment = null;
+    private PumpActuator pumpActuator = on -> environment.setPumpIsOn(on);
+    
+    // startup/shutdown reports
+    private PrintStream console = System.out;
+    
+    public ControlSystem() {
+    	this(new MCU(), null);
+    }
+    
+    // simClock gives the simulation time stamped on published events
+    public ControlSystem(FloatSupplier simClock) {
+    	this(new MCU(), simClock, null);
+    }
+    
+    // every task and ADC conversion runs on the scheduler (e.g. in virtual time)
+    public ControlSystem(SimScheduler scheduler) {
+    	this(new MCU(scheduler), scheduler);
+    }
+    
+    public ControlSystem(MCU mcu, SimScheduler scheduler) {
+    	this(mcu, null, scheduler);
+    }
+    
+    // simClock null -> simulation time of the attached environment
+    public ControlSystem(MCU mcu, FloatSupplier simClock, SimScheduler scheduler) {
+    	this(mcu, simClock, scheduler, null);
+    }
+    
+    // events published on a ring shared with other sections (null -> own ring), it must be
+    // driven by the same scheduler
+    public ControlSystem(MCU mcu, FloatSupplier simClock, SimScheduler scheduler, EventRing sharedEvents) {
+    	if (simClock == null) simClock = () -> environment != null ? environment.getTimeMs() : 0;
+    	this.mcu = mcu;
+    	this.scheduler = scheduler;
+    	this.clock = scheduler != null ? scheduler : SimClock.SYSTEM;
+    	events = sharedEvents != null ? new EventBus(sharedEvents, simClock)
+    			: new EventBus(EVENT_BUS_CAPACITY, simClock, scheduler);
+    	telemetry = new TelemetryConsumer(clock);
+    	activeAlarms = new AlarmState(ALARM_TYPES.length, clock);
+    	activeAlarms.addListener(this::onAlarmTransition);
+    	events.addConsumer("telemetry", telemetry);
+    }
     
     public void setGui(EnvGUI eGUI) {
-    	gui = eGUI;
+    	events.addConsumer("gui", new GuiEventConsumer(eGUI));
+    }
+    
+    public EventBus getEventBus() {
+    	return events;
+    }
+    
+    public SimClock getClock() {
+    	return clock;
+    }
+    
+    public MCU getMcu() {
+    	return mcu;
+    }
+    
+    public SimScheduler getScheduler() {
+    	return scheduler;
+    }
+    
+    // called by the environment simulating this control system's surroundings
+    public void attachEnvironment(EnvironmentState env) {
+    	environment = env;
+    }
+    
+    // null until an environment is attached (e.g. in replay)
+    public EnvironmentState getEnvironment() {
+    	return environment;
+    }
+    
+    // where startup and shutdown reports go (System.out by default)
+    public void setConsole(PrintStream out) {
+    	console = out;
+    }
+    
+    public void setDispatcher(TaskDispatcher taskDispatcher) {
+    	dispatcher = taskDispatcher;
+    }
+    
+    // Use ADC continuous scan mode sampling every samplePeriodMs (0 -> single shot conversions)
+    // Must be called before the control system is started
+    public void setScanMode(int samplePeriodMs) {
+    	scanSamplePeriodMs = samplePeriodMs;
+    }
+    
+    // Set the signal filter of a channel (e.g. "MEDIAN:5", "EWMA:0.3"), before start
+    public void setChannelFilter(int channelId, String spec) {
+    	mcu.setFilterSpec(channelId, spec);
+    }
+    
+    // Pump driven by the pump controller (simulated environment by default), before start
+    public void setPumpActuator(PumpActuator actuator) {
+    	pumpActuator = actuator;
+    }
+    
+    private int scanSamplePeriodMs = 0;
+    private SensorPipeline sensorPipeline = null;
+    
+    // creates periodic task bound to the configured dispatcher (if any)
+    PeriodicTask newPeriodicTask(long periodMs, Runnable task, int priority, double wcetBudgetMs) {
+    	PeriodicTask periodicTask = new PeriodicTask(periodMs, task, priority, dispatcher);
+    	periodicTask.setWcetBudgetMs(wcetBudgetMs);
+    	periodicTask.setScheduler(scheduler);
+    	registerTask(periodicTask);
+    	return periodicTask;
+    }
+    
+    // every task that competes for the CPU, used by the schedulability analysis
+    private List<PeriodicTask> registeredTasks = new CopyOnWriteArrayList<>();
+    private boolean sharedTasks = false;     // registeredTasks holds the tasks of other sections too
+    private boolean reportsAnalysis = true;  // false -> another section reports the shared analysis
+    
+    // register a task created outside of the control system (e.g. environment updater)
+    public void registerTask(PeriodicTask task) {
+    	registeredTasks.add(task);
+    }
+    
+    // Register the tasks in a list shared with the other sections running on the same CPU
+    // (dispatcher or threads), before start. The analyses then cover every task of the list:
+    // the owner of the list prints the startup and final ones, reportsAnalysis selects the one
+    // section that publishes the live analysis
+    public void setSharedTasks(List<PeriodicTask> tasks, boolean reportsAnalysis) {
+    	tasks.addAll(registeredTasks);
+    	registeredTasks = tasks;
+    	sharedTasks = true;
+    	this.reportsAnalysis = reportsAnalysis;
+    }
+    
+    // Run schedulability analysis on the registered tasks,
+    // with configured budgets (measured = false) or with measured WCETs (measured = true)
+    public SchedulabilityAnalysis.Report analyseSchedulability(boolean measured) {
+    	return SchedulabilityAnalysis.analyseTasks(registeredTasks, measured, dispatcher);
     }
     
     public enum AlarmType {
@@ -34,73 +186,115 @@ public class ControlSystem extends Thread {
         
         // pump malfunctions
     	PUMP_ON_NO_FLOW,
-        PUMP_OFF_FLOW
+        PUMP_OFF_FLOW,
+        
+        // a rate of change filtered channel exceeds its rate limit
+        RATE_OF_CHANGE_TOO_HIGH
     }
     
+    // external inputs of the control logic, published on the event bus so they can be replayed
+    public enum ControlInput {
+    	WATER_LEVEL_HIGH,
+    	WATER_LEVEL_LOW,
+    	OPERATOR_PUMP_ON,
+    	OPERATOR_PUMP_OFF
+    }
+    
+    private PeriodicTask sensorReader;
+    private PeriodicTask loggerTask;
+    
     @Override
     public void run() {
-        System.out.println("Control system started");
+        startControl();
         
-        // sensor reading tasks initialization
-        PeriodicTask coReader = new PeriodicTask(READER_TASK_PERIOD_MS, () -> this.coReaderTask(), 2);
-        MCU.instance.adc1_co.startConversion();
-        coReader.start();
+        // waiting for stoppage
+        while (running) {
+            try {
+                Thread.sleep(1000);
+                
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
         
-        PeriodicTask ch4Reader = new PeriodicTask(READER_TASK_PERIOD_MS, () -> this.ch4ReaderTask(), 4);
-        MCU.instance.adc2_ch4.startConversion();
-        ch4Reader.start();
+        stopControl();
+    }
+    
+    // Create and start every control task, with a scheduler this only schedules their first releases
+    public void startControl() {
+        console.println("Control system started");
         
-        PeriodicTask airFlowReader = new PeriodicTask(READER_TASK_PERIOD_MS, () -> this.airFlowReaderTask(), 3);
-        MCU.instance.adc3_af.startConversion();
-        airFlowReader.start();
+        if (scheduler != null) {
+        	mcu.setScheduler(scheduler);
+        }
+        if (scanSamplePeriodMs > 0) {
+        	mcu.startScan(scanSamplePeriodMs);
+        }
         
-        PeriodicTask waterFlowReader = new PeriodicTask(READER_TASK_PERIOD_MS, this::pumpWaterFlowReaderTask, 5);
-        MCU.instance.adc4_wf.startConversion();
-        waterFlowReader.start();
+        // all MCU channels are processed by one sensor reading task
+        sensorPipeline = new SensorPipeline(this, mcu, scanSamplePeriodMs > 0);
+        sensorReader = newPeriodicTask(READER_TASK_PERIOD_MS, this::sensorReaderTask, 5,
+        		SENSOR_CHANNEL_WCET_BUDGET_MS * sensorPipeline.getChannelCount());
+        sensorReader.setName("sensorReader");
+        sensorPipeline.start();
+        sensorReader.start();
         
         // task that logs relevant information
-        PeriodicTask loggerTask = new PeriodicTask(1000, this::loggerTask, 1);
+        loggerTask = newPeriodicTask(1000, this::loggerTask, 1, LOGGER_TASK_WCET_BUDGET_MS);
+        loggerTask.setName("loggerTask");
+        loggerTask.setBackend(ExecutionBackend.VIRTUAL_THREAD); // soft deadline, no own OS thread
         loggerTask.start();
        
         
         // create pump controlling subsystem
-        this.pumpControlSubSys = new PumpControlSubSys(this, gui);
+        this.pumpControlSubSys = new PumpControlSubSys(this, events, pumpActuator);
+        this.pumpControlSubSys.start();
         
-        // waiting for stoppage
-        while (running) {
-            try {
-                Thread.sleep(1000);
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+        // unmask the water level interrupts, a crossing before startup is still pending
+        InterruptController exti = mcu.getInterruptController();
+        exti.enable(MCU.EXTI_WATER_LEVEL_HIGH, line -> EXTIWaterLevelHigh());
+        exti.enable(MCU.EXTI_WATER_LEVEL_LOW, line -> EXTIWaterLevelLow());
+        
+        if (!sharedTasks) {
+        	console.println("Startup schedulability analysis (configured budgets):");
+        	console.print(analyseSchedulability(false));
         }
+    }
+    
+    // Stop every control task, print the statistics and drain the event consumers
+    public void stopControl() {
+        InterruptController exti = mcu.getInterruptController();
+        exti.disable(MCU.EXTI_WATER_LEVEL_HIGH);
+        exti.disable(MCU.EXTI_WATER_LEVEL_LOW);
         
         // shutdown sensor tasks
-        coReader.shutdown();
-        ch4Reader.shutdown();
-        airFlowReader.shutdown();
-        waterFlowReader.shutdown();
+        sensorReader.shutdown();
         loggerTask.shutdown();
         
         // shutdown pump subsystem
         this.pumpControlSubSys.shutdown();
         
-        // extract maximum execution time and log it for scheduling tests 
-        double pumpCtrlWCET = pumpControlSubSys.pumpController.getMaxExecTimeMs();
-        double pumpMotiorWCET = pumpControlSubSys.waterFlowMonitor.getMaxExecTimeMs();
+        // dump timing statistics for scheduling tests
+        PeriodicTask[] tasks = { sensorReader, loggerTask,
+        		pumpControlSubSys.pumpController, pumpControlSubSys.waterFlowMonitor };
+        for (PeriodicTask task : tasks) {
+        	console.println(task.getStatsSummary());
+        }
+        console.println(exti.getStatsSummary());
         
-
-        System.out.printf("coReader max_exec_time:%f\n", coReader.getMaxExecTimeMs());
-        System.out.printf("ch4Reader max_exec_time:%f\n", ch4Reader.getMaxExecTimeMs());
-        System.out.printf("airFlowReader max_exec_time:%f\n", airFlowReader.getMaxExecTimeMs());
-        System.out.printf("waterFlowReader max_exec_time:%f\n", waterFlowReader.getMaxExecTimeMs());
-        System.out.printf("loggerTask max_exec_time:%f\n", loggerTask.getMaxExecTimeMs());
-        System.out.printf("pumpController max_exec_time:%f\n", pumpCtrlWCET);
-        System.out.printf("waterFlowMonitor max_exec_time:%f\n", pumpMotiorWCET);
+        if (!sharedTasks) {
+        	console.println("Schedulability analysis (measured WCETs):");
+        	// tasks take no virtual time, there is nothing measured to analyse
+        	if (scheduler != null) console.println("n/a in virtual time");
+        	else console.print(analyseSchedulability(true));
+        }
+        
+        // let consumers drain what is left
+        events.shutdown();
+        console.println(telemetry.getSummary() + " dropped=" + events.getDroppedSummary());
         
-        System.out.println("Control system stopped");
+        console.println("Control system stopped");
     }
 
     public void shutdown() {
@@ -108,156 +302,154 @@ public class ControlSystem extends Thread {
     }
     
     public float getCH4Concentration() { 
+    	sensorLock.readBegin();
     	return this.ch4Concentration; 
     }
     
     public float getPumpWaterFlow() { 
+    	sensorLock.readBegin();
     	return this.waterFlow; 
     }
     
+    // Sensor values of one reader period, filled by getSensorSnapshot()
+    public static final class SensorSnapshot {
+    	public float coConcentration;
+    	public float ch4Concentration;
+    	public float airFlow;
+    	public float waterFlow;
+    	public int version; // number of sensor updates so far
+    }
+    
+    // Copy the values of the last complete sensor period (new snapshot if null), lock free
+    public SensorSnapshot getSensorSnapshot(SensorSnapshot into) {
+    	if (into == null) into = new SensorSnapshot();
+    	int seq;
+    	do {
+    		seq = sensorLock.readBegin();
+    		into.coConcentration = coConcentration;
+    		into.ch4Concentration = ch4Concentration;
+    		into.airFlow = airFlow;
+    		into.waterFlow = waterFlow;
+    	} while (sensorLock.readRetry(seq));
+    	into.version = seq >>> 1;
+    	return into;
+    }
+    
     // ALARMS MANAGING
-    private final Set<AlarmType> activeAlarms = new HashSet<>();
+    private static final AlarmType[] ALARM_TYPES = AlarmType.values();
+    private final AlarmState activeAlarms;
+    
+    // only real transitions are published
+    private void onAlarmTransition(int alarmId, boolean raised, long timestampNs) {
+    	events.publishAlarm(alarmId, raised, timestampNs);
+    }
+    
+    public AlarmState getAlarmState() {
+    	return activeAlarms;
+    }
+    
+    public boolean isAlarmActive(AlarmType type) {
+    	return activeAlarms.isActive(type.ordinal());
+    }
 
+	// water level interrupt handlers (ISR context), also called by the replay
 	public void EXTIWaterLevelHigh() {
-		if (this.pumpControlSubSys != null)
-			this.pumpControlSubSys.setwaterLevelHighFlag();
+		// only inputs that set a flag change the pump logic, repeated ones are not published
+		if (this.pumpControlSubSys != null && this.pumpControlSubSys.setwaterLevelHighFlag()) {
+			events.publishInput(ControlInput.WATER_LEVEL_HIGH.ordinal());
+		}
 	}
 	public void EXTIWaterLevelLow() {
-		if (this.pumpControlSubSys != null)
-			this.pumpControlSubSys.setwaterLevelLowFlag();
+		if (this.pumpControlSubSys != null && this.pumpControlSubSys.setwaterLevelLowFlag()) {
+			events.publishInput(ControlInput.WATER_LEVEL_LOW.ordinal());
+		}
+	}
+	
+	// The pump was switched against a water level line that is still asserted (operator, CH4 interlock):
+	// its edge is gone, so trigger it again by software to keep the level in control
+	void retriggerWaterLevelInterrupt(int line) {
+		InterruptController exti = mcu.getInterruptController();
+		if (exti.isAsserted(line)) exti.trigger(line);
 	}
     
-	// Raise (or re-raise) an alarm
+	// Raise (or re-raise) an alarm, safe to call from any task on every sample
     public void soundAnAlarm(AlarmType type) {
-        if (!activeAlarms.contains(type)) {
-            activeAlarms.add(type);
-            gui.log("⚠ ALARM RAISED: " + type);
-            gui.showAlarm(type);
-        }
+        activeAlarms.raise(type.ordinal());
     }
 
     // Clear/reset an alarm
     public void clearAlarm(AlarmType type) {
-    	if (activeAlarms.contains(type)) {
-    		activeAlarms.remove(type);
-            gui.log("✅ ALARM CLEARED: " + type);
-            gui.clearAlarm(type);
-        }
+    	activeAlarms.clear(type.ordinal());
     }
     
     public void pumpManualControlSignal(boolean pumpOn) {
     	this.pumpControlSubSys.setManualControl(pumpOn);
+    	events.publishInput((pumpOn ? ControlInput.OPERATOR_PUMP_ON : ControlInput.OPERATOR_PUMP_OFF).ordinal());
+    }
+    
+    // ===== replay =====
+    // The replay engine drives the control logic itself: no tasks, no ADC conversions
+    
+    void prepareReplay() {
+    	sensorPipeline = new SensorPipeline(this, mcu, false);
+    	pumpControlSubSys = new PumpControlSubSys(this, events, pumpActuator);
+    }
+    
+    int getSensorChannelCount() {
+    	return sensorPipeline.getChannelCount();
+    }
+    
+    void replaySensorPeriod(ADCStatus[] statuses, float[] values, float timeMs) {
+    	sensorPipeline.processRecordedPeriod(statuses, values, (long) (timeMs * 1_000_000.0));
+    	updateSensorValues();
+    }
+    
+    // one period of both pump tasks, higher priority monitor first
+    void replayPumpPeriod() {
+    	pumpControlSubSys.pumpWaterFlowMonitorTask();
+    	pumpControlSubSys.pumpControllerTask();
     }
     
     // Defining needed periodic tasks for sensor and logging functions
     
-    private volatile ADCStatus prevCoReaderStatus = ADCStatus.DATA_READY;
-    public void coReaderTask() {
-    	ADCStatus adc_status = MCU.instance.adc1_co.getStatus();
-
-		if (adc_status != ADCStatus.DATA_READY) {
-    		
-    		if (prevCoReaderStatus != ADCStatus.DATA_READY) {
-        		// two malfunctions in a row -> sound an alarm
-
-        		this.soundAnAlarm(AlarmType.CO_SENSOR_FAULT);
-    		}
-    	}
-    	else {
-			this.clearAlarm(AlarmType.CO_SENSOR_FAULT);
-    		
-			this.coConcentration = MCU.instance.adc1_co.getValue();
-    		
-    		if (this.coConcentration > EnvConfig.CO_CONCENTRATION_LIMIT) {
-    			this.soundAnAlarm(AlarmType.CO_CONCENTRATION_TOO_HIGH);
-    		}
-    		else this.clearAlarm(AlarmType.CO_CONCENTRATION_TOO_HIGH);
-    	}
-    	
-    	prevCoReaderStatus = adc_status;
-    	
-    	// period displacement
-    	MCU.instance.adc1_co.startConversion();
-    }
-    
-    private ADCStatus prevCh4ReaderStatus = ADCStatus.DATA_READY;
-    public void ch4ReaderTask() {
-    	ADCStatus adc_status = MCU.instance.adc2_ch4.getStatus();
-    	if (adc_status != ADCStatus.DATA_READY) {
-    		if (prevCh4ReaderStatus != ADCStatus.DATA_READY) {
-        		// two malfunctions in a row -> sound an alarm
-    			this.soundAnAlarm(AlarmType.CH4_SENSOR_FAULT);
-    		}
-    	}
-    	else {
-			this.clearAlarm(AlarmType.CH4_SENSOR_FAULT);
-			
-    		this.ch4Concentration = MCU.instance.adc2_ch4.getValue();
-    		if (this.ch4Concentration > EnvConfig.CH4_CONCENTRATION_LIMIT) {
-    			// two malfunctions in a row -> sound an alarm
-    			this.soundAnAlarm(AlarmType.CH4_CONCENTRATION_TOO_HIGH);
-    		}
-    		else this.clearAlarm(AlarmType.CH4_CONCENTRATION_TOO_HIGH);
-    	}
-    	
-    	prevCh4ReaderStatus = adc_status;
-    	
-    	// period displacement
-    	MCU.instance.adc2_ch4.startConversion();
-    }
-    
-    private ADCStatus prevAirFlowReaderStatus = ADCStatus.DATA_READY;
-    public void airFlowReaderTask() {
-    	ADCStatus adc_status = MCU.instance.adc3_af.getStatus();
-    	if (adc_status != ADCStatus.DATA_READY) {
-    		if (prevAirFlowReaderStatus != ADCStatus.DATA_READY) {
-        		// two malfunctions in a row -> sound an alarm
-    			this.soundAnAlarm(AlarmType.AIR_FLOW_SENSOR_FAULT);
-    		}
-    	}
-    	else {
-			this.clearAlarm(AlarmType.AIR_FLOW_SENSOR_FAULT);
-			
-    		this.airFlow = MCU.instance.adc3_af.getValue();
-    		if (this.airFlow < EnvConfig.AIR_FLOW_LIMIT) {
-    			this.soundAnAlarm(AlarmType.AIR_FLOW_TOO_LOW);
-    		}
-    		else this.clearAlarm(AlarmType.AIR_FLOW_TOO_LOW);
-    	}
-    	prevAirFlowReaderStatus = adc_status;
-    	
-    	// period displacement
-    	MCU.instance.adc3_af.startConversion();
+    public void sensorReaderTask() {
+    	sensorPipeline.processPeriod();
+    	updateSensorValues();
     }
     
-    private ADCStatus prevWaterFlowReaderStatus = ADCStatus.DATA_READY;
-    public void pumpWaterFlowReaderTask() {
-    	ADCStatus adc_status = MCU.instance.adc4_wf.getStatus();
-    	if (adc_status != ADCStatus.DATA_READY) {
-    		if (prevWaterFlowReaderStatus != ADCStatus.DATA_READY) {
-    			this.soundAnAlarm(AlarmType.WATER_FLOW_SENSOR_FAULT);
-    		}
-    	}
-    	else {
-    		this.clearAlarm(AlarmType.WATER_FLOW_SENSOR_FAULT);
-    		
-    		this.waterFlow = MCU.instance.adc4_wf.getValue();
-    	}
-    	prevWaterFlowReaderStatus = adc_status;
+    private void updateSensorValues() {
+    	float co = sensorPipeline.getTypeValue(ChannelType.CO);
+    	float ch4 = sensorPipeline.getTypeValue(ChannelType.CH4);
+    	float air = sensorPipeline.getTypeValue(ChannelType.AIR_FLOW);
+    	float flow = sensorPipeline.getTypeValue(ChannelType.WATER_FLOW);
     	
-    	// period displacement
-    	MCU.instance.adc4_wf.startConversion();
+    	sensorLock.writeBegin();
+    	coConcentration = co;
+    	ch4Concentration = ch4;
+    	airFlow = air;
+    	waterFlow = flow;
+    	sensorLock.writeEnd();
     }
     
+    private int loggerPeriods = 0;
+    private final SensorSnapshot loggerSnapshot = new SensorSnapshot();
     public void loggerTask() {
-        gui.log("CO: %.2f%% | CH4: %.2f%% | AirFlow: %.2f m^3/s | WaterFlow: %.2f cm/s | waterLevel: %.2f cm",
-                coConcentration, ch4Concentration, airFlow, waterFlow, EnvironmentState.getInstance().getWaterLevel());
+    	if (++loggerPeriods % LIVE_ANALYSIS_LOGGER_PERIODS == 0 && reportsAnalysis && scheduler == null) {
+    		events.publishLog("control", (sharedTasks ? "Schedulability (measured, all sections): " : "Schedulability (measured): ")
+    				+ analyseSchedulability(true).getSummary());
+    	}
+    	
+        SensorSnapshot s = getSensorSnapshot(loggerSnapshot);
+        events.publishLog("control", "CO: %.2f%% | CH4: %.2f%% | AirFlow: %.2f m^3/s | WaterFlow: %.2f cm/s | waterLevel: %.2f cm",
+                s.coConcentration, s.ch4Concentration, s.airFlow, s.waterFlow, environment.getWaterLevel());
     }
     
-    // read values from sensors
-    private volatile float coConcentration = 0;
-    private volatile float ch4Concentration = 0;
-    private volatile float airFlow = 0;
-    private volatile float waterFlow = 0;
+    // read values from sensors, worst case over all channels of a type,
+    // written together by the sensor reader under the sequence lock
+    private final SeqLock sensorLock = new SeqLock();
+    private float coConcentration = 0;
+    private float ch4Concentration = 0;
+    private float airFlow = 0;
+    private float waterFlow = 0;
     
 }
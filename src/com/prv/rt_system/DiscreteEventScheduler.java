@@ -0,0 +1,76 @@
+package com.prv.rt_system;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+// Discrete event simulation on one thread: virtual time jumps straight to the next pending
+// action, so simulated time costs only the work done in it. Ordering depends only on the
+// scheduled instants, priorities and scheduling order, every run is reproducible.
+// Not thread safe, actions may only be scheduled from the thread calling runUntil (or before).
+public class DiscreteEventScheduler implements SimScheduler {
+
+    private static final class Event implements Comparable<Event> {
+        long atNs;
+        int priority;
+        long seq;
+        Runnable action;
+
+        @Override
+        public int compareTo(Event o) {
+            if (atNs != o.atNs) return Long.compare(atNs, o.atNs);
+            if (priority != o.priority) return Integer.compare(o.priority, priority);
+            return Long.compare(seq, o.seq);
+        }
+    }
+
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    private final ArrayDeque<Event> freeEvents = new ArrayDeque<>();
+    private long seq = 0;
+    private long executed = 0;
+
+    // volatile, event bus consumers read the clock from their own threads
+    private volatile long now = 0;
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public void scheduleAt(long atNs, int priority, Runnable action) {
+        Event e = freeEvents.poll();
+        if (e == null) e = new Event();
+        e.atNs = Math.max(atNs, now); // no going back in time
+        e.priority = priority;
+        e.seq = seq++;
+        e.action = action;
+        queue.add(e);
+    }
+
+    // Run every action due up to endNs, then leave the clock at endNs
+    // Returns the number of actions run
+    public long runUntil(long endNs) {
+        long start = executed;
+        Event e;
+        while ((e = queue.peek()) != null && e.atNs <= endNs) {
+            queue.poll();
+            now = e.atNs;
+            Runnable action = e.action;
+            e.action = null;
+            freeEvents.push(e);
+
+            action.run();
+            executed++;
+        }
+        if (endNs > now) now = endNs;
+        return executed - start;
+    }
+
+    public int getPendingEvents() {
+        return queue.size();
+    }
+
+    public long getExecutedEvents() {
+        return executed;
+    }
+}
@@ -4,20 +4,45 @@ import javax.swing.*;
 
 import com.prv.EnvironmentState;
 import com.prv.rt_system.ControlSystem.AlarmType;
+import com.prv.rt_system.LogModel.Severity;
 
 import java.awt.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 public class EnvGUI {
     private JFrame frame;
-    private JTextArea logArea;
-    private JProgressBar waterLevelBar;
     private JTextArea alarmListArea;
-
-    // Buttons for ADC devices and pump malfunction
+    private JProgressBar waterLevelBar;
+    
+    // One render tick per frame on the EDT: producers only record state and set dirty flags, the
+    // frame pulls the latest state and updates what changed, so bursts of events collapse into one
+    // update and nothing else is queued on the EDT however many channels are monitored
+    public static final int FRAME_PERIOD_MS = 33; // ~30 Hz
+    
+    // water level shown, in 0.1 cm
+    private final EnvironmentState.Snapshot envSnapshot = new EnvironmentState.Snapshot();
+    private int shownWaterLevel = Integer.MIN_VALUE;
+    
+    private volatile boolean pumpCommandOn = false;
+    private final AtomicBoolean pumpStateDirty = new AtomicBoolean();
+    private final AtomicBoolean alarmsDirty = new AtomicBoolean();
+    private String shownAlarms = null;
+    
+    // bounded log, the list renders only its visible rows; appends are flushed once per frame
+    private static final String ALL_SOURCES = "All sources";
+    private final LogModel logModel = new LogModel();
+    private JList<String> logList;
+    private JScrollPane logScrollPane;
+    private JComboBox<Severity> severityFilter;
+    private JComboBox<String> sourceFilter;
+    private JTextField searchField;
+    private JLabel logCountLabel;
+
+    // Buttons for ADC devices (one per MCU channel) and pump malfunction
     private JButton[] adcButtons;
-    private String[] adc_names = { "ADC1 CO", "ADC2 CH4", "ADC3 AirFlow", "ADC4 PumpWF" };
+    private static final int CONTROL_BUTTONS_PER_ROW = 5;
     private JButton pumpFaultButton;
     
     // pump control button and status indicator
@@ -25,15 +50,20 @@ public class EnvGUI {
     private JButton pumpOffButton;
     private JLabel pumpStateLabel; // indicator for pump state
     
-    private static EnvGUI instance;
+    // section shown by this window, the environment is null without a control system
+    private final MCU mcu;
+    private final EnvironmentState environment;
 
-    public static EnvGUI getInstance() {
-        return instance;
+    public EnvGUI(ControlSystem controlSystem) {
+        this(controlSystem, "Environment Control System");
     }
 
-    public EnvGUI(ControlSystem controlSystem) {
+    public EnvGUI(ControlSystem controlSystem, String title) {
+        mcu = controlSystem != null ? controlSystem.getMcu() : new MCU();
+        environment = controlSystem != null ? controlSystem.getEnvironment() : null;
+
         // Create main window
-        frame = new JFrame("Environment Control System");
+        frame = new JFrame(title);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(900, 700);
         frame.setLayout(new BorderLayout());
@@ -41,11 +71,48 @@ public class EnvGUI {
         // === CENTER: Logs ===
         JPanel logPanel = new JPanel(new BorderLayout());
         logPanel.setBorder(BorderFactory.createTitledBorder("System Logs"));
-        logArea = new JTextArea();
-        logArea.setEditable(false);
-        JScrollPane scrollPane = new JScrollPane(logArea);
-        logPanel.add(scrollPane, BorderLayout.CENTER);
+        logList = new JList<>(logModel);
+        logList.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        // fixed cell size: layout and scrolling never measure the other rows
+        logList.setPrototypeCellValue(String.format("%160s", ""));
+        logList.setCellRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (!isSelected) {
+                    Severity severity = logModel.getSeverityAt(index);
+                    setForeground(severity == Severity.ALARM ? Color.RED : severity == Severity.WARNING ? new Color(200, 110, 0) : Color.BLACK);
+                }
+                return this;
+            }
+        });
+        logScrollPane = new JScrollPane(logList);
+        logPanel.add(logScrollPane, BorderLayout.CENTER);
+        
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        severityFilter = new JComboBox<>(Severity.values());
+        sourceFilter = new JComboBox<>(new String[] { ALL_SOURCES });
+        searchField = new JTextField(20);
+        logCountLabel = new JLabel();
+        severityFilter.addActionListener(e -> applyLogFilter());
+        sourceFilter.addActionListener(e -> applyLogFilter());
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { applyLogFilter(); }
+            @Override public void removeUpdate(DocumentEvent e) { applyLogFilter(); }
+            @Override public void changedUpdate(DocumentEvent e) { applyLogFilter(); }
+        });
+        filterPanel.add(new JLabel("Severity"));
+        filterPanel.add(severityFilter);
+        filterPanel.add(sourceFilter);
+        filterPanel.add(new JLabel("Search"));
+        filterPanel.add(searchField);
+        filterPanel.add(logCountLabel);
+        logPanel.add(filterPanel, BorderLayout.NORTH);
         frame.add(logPanel, BorderLayout.CENTER);
+        
+        new Timer(FRAME_PERIOD_MS, e -> renderFrame()).start();
 
         // === RIGHT: Alarms ===
         JPanel rightPanel = new JPanel(new BorderLayout());
@@ -80,17 +147,18 @@ public class EnvGUI {
         frame.add(waterPanel, BorderLayout.WEST);
 
         // === TOP: Control buttons (ADC + Pump malfunction) ===
-        JPanel topPanel = new JPanel(new GridLayout(1, 5, 5, 5));
+        JPanel topPanel = new JPanel(new GridLayout(0, CONTROL_BUTTONS_PER_ROW, 5, 5));
         topPanel.setBorder(BorderFactory.createTitledBorder("Controls"));
 
-        adcButtons = new JButton[4];
+        adcButtons = new JButton[mcu.getChannelCount()];
         for (int i = 0; i < adcButtons.length; i++) {
-            int idx = i;
-            adcButtons[i] = new JButton(adc_names[idx] + " [OK]");
+            int channelId = i;
+            String name = mcu.getChannelName(channelId);
+            adcButtons[i] = new JButton(name + " [OK]");
             adcButtons[i].setBackground(Color.GREEN);
             adcButtons[i].setOpaque(true);
 
-            adcButtons[i].addActionListener(e -> toggleADCButton(adcButtons[idx], adc_names[idx], idx + 1));
+            adcButtons[i].addActionListener(e -> toggleADCButton(adcButtons[channelId], name, channelId));
             topPanel.add(adcButtons[i]);
         }
 
@@ -101,7 +169,10 @@ public class EnvGUI {
         pumpFaultButton.addActionListener(e -> togglePumpButton(pumpFaultButton, "Pump"));
         topPanel.add(pumpFaultButton);
         
-        frame.add(topPanel, BorderLayout.NORTH);
+        // many channels -> keep the control panel scrollable
+        JScrollPane topScrollPane = new JScrollPane(topPanel);
+        topScrollPane.setPreferredSize(new Dimension(0, Math.min(200, topPanel.getPreferredSize().height + 5)));
+        frame.add(topScrollPane, BorderLayout.NORTH);
 
         // === BOTTOM: Pump controls ===
         JPanel bottomPanel = new JPanel(new GridLayout(1, 3, 10, 10));
@@ -132,21 +203,21 @@ public class EnvGUI {
 
     }
     
-    private void toggleADCButton(JButton button, String name, int adcNo) {
+    private void toggleADCButton(JButton button, String name, int channelId) {
         boolean isFault = button.getBackground() == Color.RED;
 
         if (isFault) {
             // Switch back to OK
             button.setBackground(Color.GREEN);
             button.setText(name + " [OK]");
-            logArea.append(name + " set to OK\n");
-            MCU.instance.fixADCDevice(adcNo);
+            log(Severity.INFO, "gui", name + " set to OK");
+            mcu.fixADCDevice(channelId);
         } else {
             // Switch to FAULT
             button.setBackground(Color.RED);
             button.setText(name + " [FAULT]");
-            logArea.append(name + " set to FAULT\n");
-            MCU.instance.brakeDownADCDevice(adcNo);
+            log(Severity.WARNING, "gui", name + " set to FAULT");
+            mcu.brakeDownADCDevice(channelId);
         }
     }
 
@@ -156,34 +227,42 @@ public class EnvGUI {
         if (isFault) {
             button.setBackground(Color.GREEN);
             button.setText(name + " [OK]");
-            logArea.append(name + " set to OK\n");
-            EnvironmentState.getInstance().setPumpWorkingProperly(true);
+            log(Severity.INFO, "gui", name + " set to OK");
+            if (environment != null) environment.setPumpWorkingProperly(true);
             
         } else {
             button.setBackground(Color.RED);
             button.setText(name + " [FAULT]");
-            logArea.append(name + " set to FAULT\n");
-            EnvironmentState.getInstance().setPumpWorkingProperly(false);
+            log(Severity.WARNING, "gui", name + " set to FAULT");
+            if (environment != null) environment.setPumpWorkingProperly(false);
             
         }
     }
     
-    public void updateWaterLevel(float cmValue, float minLevel, float maxLevel) {
-        // Update progress bar safely on Swing thread
-        SwingUtilities.invokeLater(() -> {
-            waterLevelBar.setValue((int)cmValue);
-            waterLevelBar.setString(String.format("%.1f cm", cmValue));
-        });
+    // render tick (EDT)
+    private void renderFrame() {
+        flushLog();
+        
+        if (environment != null) {
+            int level = Math.round(environment.snapshot(envSnapshot).waterLevel * 10);
+            if (level != shownWaterLevel) {
+                shownWaterLevel = level;
+                waterLevelBar.setValue(level / 10);
+                waterLevelBar.setString(String.format("%.1f cm", level / 10f));
+            }
+        }
+        
+        if (pumpStateDirty.getAndSet(false)) {
+            pumpStateLabel.setText(pumpCommandOn ? "Pump is set to ON" : "Pump is set to OFF");
+        }
+        if (alarmsDirty.getAndSet(false)) {
+            renderAlarms();
+        }
     }
     
-    /** Log a plain message (thread-safe). */
+    /** Log a plain message at the current simulation time (thread-safe). */
     public void log(String message) {
-    	float t_s = EnvironmentState.getInstance().getTimeMs() / 1000;
-    	
-    	SwingUtilities.invokeLater(() -> {
-            logArea.append(String.format("t: %5.2f s - ", t_s) + message + "\n");
-            logArea.setCaretPosition(logArea.getDocument().getLength()); // auto-scroll
-        });
+    	log(Severity.INFO, "gui", message);
     }
 
     /** Log a formatted message (printf style). */
@@ -192,41 +271,81 @@ public class EnvGUI {
         log(msg);
     }
     
+    public void log(Severity severity, String source, String message) {
+    	float timeMs = environment != null ? environment.getTimeMs() : 0;
+    	appendLog(timeMs, severity, source, message);
+    }
+
+    /** Append a log entry, shown with the next frame (thread-safe). */
+    public void appendLog(float timeMs, Severity severity, String source, String message) {
+    	logModel.append(timeMs, severity, source, message);
+    }
+    
+    public LogModel getLogModel() {
+    	return logModel;
+    }
+    
+    // move the entries of the last frame into the list, following the end if it was shown
+    private void flushLog() {
+    	JScrollBar bar = logScrollPane.getVerticalScrollBar();
+    	boolean atEnd = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - logList.getFixedCellHeight();
+    	if (!logModel.flush()) return;
+    	
+    	if (logModel.getSources().size() + 1 != sourceFilter.getItemCount()) {
+    		for (String source : logModel.getSources()) {
+    			if (((DefaultComboBoxModel<String>) sourceFilter.getModel()).getIndexOf(source) < 0) sourceFilter.addItem(source);
+    		}
+    	}
+    	if (atEnd && logModel.getSize() > 0) logList.ensureIndexIsVisible(logModel.getSize() - 1);
+    	updateLogCount();
+    }
+    
+    private void applyLogFilter() {
+    	String source = (String) sourceFilter.getSelectedItem();
+    	logModel.setFilter((Severity) severityFilter.getSelectedItem(),
+    			source == null || source.equals(ALL_SOURCES) ? null : source, searchField.getText());
+    	if (logModel.getSize() > 0) logList.ensureIndexIsVisible(logModel.getSize() - 1);
+    	updateLogCount();
+    }
+    
+    private void updateLogCount() {
+    	logCountLabel.setText(String.format("%d of %d lines%s", logModel.getSize(), logModel.getEntryCount(),
+    			logModel.getDroppedCount() > 0 ? ", " + logModel.getDroppedCount() + " dropped" : ""));
+    }
+    
+    /** Record the last pump command, shown with the next frame (thread-safe). */
     public void setPumpState(boolean pumpOn) {
-        String text = pumpOn ? "Pump is set to ON" : "Pump is set to OFF";
-        SwingUtilities.invokeLater(() -> pumpStateLabel.setText(text));
+        pumpCommandOn = pumpOn;
+        pumpStateDirty.set(true);
     }
     
     // Alarm interface
     
-    private final Set<AlarmType> activeAlarms = new HashSet<>();
+    private static final AlarmType[] ALARM_TYPES = AlarmType.values();
+    private final AlarmState activeAlarms = new AlarmState(ALARM_TYPES.length);
 
+    // alarm transitions only mark the display dirty (thread-safe)
     public void showAlarm(AlarmType type) {
-        activeAlarms.add(type);
-        updateAlarmDisplay();
+        if (activeAlarms.raise(type.ordinal())) alarmsDirty.set(true);
     }
 
     public void clearAlarm(AlarmType type) {
-        activeAlarms.remove(type);
-        updateAlarmDisplay();
-    }
-
-    private void updateAlarmDisplay() {
-        SwingUtilities.invokeLater(() -> {
-            if (activeAlarms.isEmpty()) {
-                alarmListArea.setText("No Alarms");
-                alarmListArea.setBackground(Color.GREEN);
-                alarmListArea.setForeground(Color.BLACK);
-            } else {
-                StringBuilder sb = new StringBuilder();
-                for (AlarmType alarm : activeAlarms) {
-                    sb.append("⚠ ").append(alarm).append("\n");
-                }
-                alarmListArea.setText(sb.toString());
-                alarmListArea.setBackground(Color.YELLOW);
-                alarmListArea.setForeground(Color.RED);
-            }
-        });
+        if (activeAlarms.clear(type.ordinal())) alarmsDirty.set(true);
+    }
+
+    // EDT, alarms raised and cleared within one frame leave the display as it is
+    private void renderAlarms() {
+        StringBuilder sb = new StringBuilder();
+        for (int id = activeAlarms.nextActive(0); id >= 0; id = activeAlarms.nextActive(id + 1)) {
+            sb.append("⚠ ").append(ALARM_TYPES[id]).append("\n");
+        }
+        String text = sb.length() == 0 ? "No Alarms" : sb.toString();
+        if (text.equals(shownAlarms)) return;
+        shownAlarms = text;
+        
+        alarmListArea.setText(text);
+        alarmListArea.setBackground(sb.length() == 0 ? Color.GREEN : Color.YELLOW);
+        alarmListArea.setForeground(sb.length() == 0 ? Color.BLACK : Color.RED);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,181 @@
+package com.prv.rt_system;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Publishing side of one section on an EventRing.
+// Control tasks publish in constant time without locks, allocation or waiting. Samples, rates and
+// log messages are lossy: they may only fill the ring up to its headroom, beyond that they are
+// dropped and counted. Alarms, pump commands and inputs may use the headroom and the overflow of
+// the ring, they are dropped and counted only when both are full (see EventRing). In virtual time
+// the ring makes room by draining its consumers, so nothing is dropped.
+// Consumers added here only see the events of this bus's section.
+public class EventBus {
+
+    private static final ControlEvent.Type[] TYPES = ControlEvent.Type.values();
+
+    private final EventRing ring;
+    private final int section;
+    private final boolean ownsRing;
+    private final FloatSupplier simClock;
+
+    private final AtomicLongArray dropped = new AtomicLongArray(TYPES.length); // by type
+
+    // simClock gives the simulation time stamped on every event
+    public EventBus(int capacity, FloatSupplier simClock) {
+        this(capacity, simClock, null);
+    }
+
+    // Bus on an own ring, scheduler null -> real time (see EventRing)
+    public EventBus(int capacity, FloatSupplier simClock, SimScheduler scheduler) {
+        this(new EventRing(capacity, scheduler), true, simClock);
+    }
+
+    // Bus of a new section on a shared ring
+    public EventBus(EventRing ring, FloatSupplier simClock) {
+        this(ring, false, simClock);
+    }
+
+    private EventBus(EventRing ring, boolean ownsRing, FloatSupplier simClock) {
+        this.ring = ring;
+        this.section = ring.newSection();
+        this.ownsRing = ownsRing;
+        this.simClock = simClock;
+    }
+
+    public int getSection() {
+        return section;
+    }
+
+    public long getDroppedEvents() {
+        long sum = 0;
+        for (int i = 0; i < TYPES.length; i++) sum += dropped.get(i);
+        return sum;
+    }
+
+    public long getDroppedEvents(ControlEvent.Type type) {
+        return dropped.get(type.ordinal());
+    }
+
+    // e.g. "SAMPLE=12 LOG=3", "0" if nothing was dropped
+    public String getDroppedSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (ControlEvent.Type type : TYPES) {
+            long n = dropped.get(type.ordinal());
+            if (n == 0) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(type).append('=').append(n);
+        }
+        return sb.length() == 0 ? "0" : sb.toString();
+    }
+
+    // Attach consumer, it sees every event of this section published from now on.
+    // Consumers of the same name share one context across the sections of the ring
+    public void addConsumer(String name, EventConsumer consumer) {
+        ring.addConsumer(name, section, consumer);
+    }
+
+    // Stop this section's consumers after they processed everything published so far
+    public void shutdown() {
+        ring.detach(section);
+        if (ownsRing) ring.shutdown();
+    }
+
+    // ===== producer side =====
+
+    public boolean publishSample(int channel, float value, int status) {
+        long seq = claim(ControlEvent.Type.SAMPLE);
+        if (seq == EventRing.DROPPED) return false;
+
+        ControlEvent e = begin(seq, ControlEvent.Type.SAMPLE);
+        e.channel = channel;
+        e.value = value;
+        e.status = status;
+        publish(seq);
+        return true;
+    }
+
+    public boolean publishRate(int channel, float ratePerS) {
+        long seq = claim(ControlEvent.Type.RATE);
+        if (seq == EventRing.DROPPED) return false;
+
+        ControlEvent e = begin(seq, ControlEvent.Type.RATE);
+        e.channel = channel;
+        e.value = ratePerS;
+        publish(seq);
+        return true;
+    }
+
+    public boolean publishAlarm(int alarmId, boolean raised, long timestampNs) {
+        long seq = claim(ControlEvent.Type.ALARM);
+        if (seq == EventRing.DROPPED) return false;
+
+        ControlEvent e = begin(seq, ControlEvent.Type.ALARM);
+        e.timestampNs = timestampNs;
+        e.channel = alarmId;
+        e.flag = raised;
+        publish(seq);
+        return true;
+    }
+
+    public boolean publishPumpCommand(boolean pumpOn) {
+        long seq = claim(ControlEvent.Type.PUMP_COMMAND);
+        if (seq == EventRing.DROPPED) return false;
+
+        ControlEvent e = begin(seq, ControlEvent.Type.PUMP_COMMAND);
+        e.flag = pumpOn;
+        publish(seq);
+        return true;
+    }
+
+    public boolean publishInput(int inputId) {
+        long seq = claim(ControlEvent.Type.INPUT);
+        if (seq == EventRing.DROPPED) return false;
+
+        ControlEvent e = begin(seq, ControlEvent.Type.INPUT);
+        e.channel = inputId;
+        publish(seq);
+        return true;
+    }
+
+    // message should be a constant, it is stored by reference
+    public boolean publishLog(String source, String message) {
+        return publishLog(source, message, 0, 0, 0, 0, 0, 0);
+    }
+
+    // printf style message with up to MAX_ARGS float arguments, formatted by the consumers
+    public boolean publishLog(String source, String format, float a0, float a1, float a2, float a3, float a4) {
+        return publishLog(source, format, ControlEvent.MAX_ARGS, a0, a1, a2, a3, a4);
+    }
+
+    private boolean publishLog(String source, String format, int argCount,
+            float a0, float a1, float a2, float a3, float a4) {
+        long seq = claim(ControlEvent.Type.LOG);
+        if (seq == EventRing.DROPPED) return false;
+
+        ControlEvent e = begin(seq, ControlEvent.Type.LOG);
+        e.source = source;
+        e.message = format;
+        e.argCount = argCount;
+        e.args[0] = a0;
+        e.args[1] = a1;
+        e.args[2] = a2;
+        e.args[3] = a3;
+        e.args[4] = a4;
+        publish(seq);
+        return true;
+    }
+
+    private long claim(ControlEvent.Type type) {
+        long seq = ring.claim(type);
+        if (seq == EventRing.DROPPED) dropped.incrementAndGet(type.ordinal());
+        return seq;
+    }
+
+    private ControlEvent begin(long seq, ControlEvent.Type type) {
+        return ring.begin(seq, type, section, simClock.getAsFloat());
+    }
+
+    private void publish(long seq) {
+        ring.publish(seq);
+    }
+}
@@ -0,0 +1,11 @@
+package com.prv.rt_system;
+
+// Consumer of EventBus events, called on the consumer's own thread
+public interface EventConsumer {
+
+    // endOfBatch is true for the last event currently available, flush batched work there
+    void onEvent(ControlEvent event, long sequence, boolean endOfBatch);
+
+    // called once when the bus shuts down
+    default void onShutdown() {}
+}
@@ -0,0 +1,405 @@
+package com.prv.rt_system;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Multi-producer ring buffer of preallocated ControlEvents (Disruptor style), shared by the
+// EventBus of every section of a process. Events carry the id of their section.
+// Consumers are grouped by name ("telemetry", "file-log", ...): a group holds one consumer per
+// section and hands every event to the consumer of its section, so the number of consumer
+// contexts does not grow with the sections. In real time every group runs on its own thread,
+// parked until a producer signals a new event. Driven by a scheduler (virtual time) the groups
+// have no threads: they are drained on the scheduler thread, after every task of the instant
+// the events were published at, or right away by a producer that finds the ring full.
+// Producers never wait. Samples, rates and log messages may fill the ring up to its headroom and
+// are dropped beyond it. Alarms, pump commands and inputs may use the headroom; in real time,
+// those that find the whole ring full go to a preallocated overflow ring, moved into the ring in
+// order as slots free up. They are dropped only if the overflow is full too.
+public class EventRing {
+
+    // scheduler priority of the drain, below every task
+    private static final int DRAIN_PRIORITY = 0;
+    // claimed sequence of a dropped event, sequences below it are slots of the overflow
+    static final long DROPPED = -1;
+
+    private final ControlEvent[] slots;
+    private final int mask;
+    private final int lossyLimit; // slots that samples, rates and log messages may fill
+    private final ControlEvent[] overflow; // critical events that found the ring full
+    private final int overflowMask;
+    private final SimClock clock;
+    private final SimScheduler scheduler; // null -> consumer threads
+
+    // next sequence to claim, shared by all producers
+    private final AtomicLong cursor = new AtomicLong(0);
+    // sequence stored in a slot once its event is fully written
+    private final AtomicLongArray published;
+
+    // overflow: next sequence to claim, sequence of every fully written event and next to move
+    private final AtomicLong overflowCursor = new AtomicLong(0);
+    private final AtomicLongArray overflowPublished;
+    private volatile long overflowNext = 0;
+    private final AtomicBoolean moving = new AtomicBoolean(); // one thread moves the overflow
+
+    private final CopyOnWriteArrayList<ConsumerGroup> groups = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextSection = new AtomicInteger();
+    private volatile boolean running = true;
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable scheduledDrain = () -> {
+        drainScheduled.set(false);
+        drainAll();
+    };
+
+    // real time, events are stamped with the system clock
+    public EventRing(int capacity) {
+        this(capacity, null);
+    }
+
+    // scheduler null -> real time, else consumers run on the scheduler and events are stamped
+    // with its clock
+    public EventRing(int capacity, SimScheduler scheduler) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.slots = new ControlEvent[capacity];
+        for (int i = 0; i < capacity; i++) slots[i] = new ControlEvent();
+        this.mask = capacity - 1;
+        this.lossyLimit = capacity - Math.max(1, capacity / 8);
+        int overflowCapacity = Math.max(1, capacity / 8);
+        this.overflow = new ControlEvent[overflowCapacity];
+        for (int i = 0; i < overflowCapacity; i++) overflow[i] = new ControlEvent();
+        this.overflowMask = overflowCapacity - 1;
+        this.scheduler = scheduler;
+        this.clock = scheduler != null ? scheduler : SimClock.SYSTEM;
+
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1);
+        this.overflowPublished = new AtomicLongArray(overflowCapacity);
+        for (int i = 0; i < overflowCapacity; i++) overflowPublished.set(i, -1);
+    }
+
+    public SimClock getClock() {
+        return clock;
+    }
+
+    // Id for a new section publishing on this ring
+    public int newSection() {
+        return nextSection.getAndIncrement();
+    }
+
+    // Attach the section's consumer to the group of the name, it sees every event of the section
+    // published from now on
+    public void addConsumer(String name, int section, EventConsumer consumer) {
+        ConsumerGroup group;
+        synchronized (groups) {
+            group = null;
+            for (ConsumerGroup g : groups) {
+                if (g.name.equals(name)) group = g;
+            }
+            if (group == null) {
+                group = new ConsumerGroup(name, cursor.get());
+                groups.add(group);
+                if (group.thread != null) group.thread.start();
+            }
+        }
+        group.attach(section, consumer, cursor.get());
+    }
+
+    // Detach the section's consumers once they processed everything published so far,
+    // their onShutdown runs on the consumer context
+    public void detach(int section) {
+        long target = cursor.get();
+        ConsumerGroup[] attached = groups.toArray(new ConsumerGroup[0]);
+        CountDownLatch done = new CountDownLatch(attached.length);
+        for (ConsumerGroup group : attached) {
+            group.detaching.add(new Detach(section, target, done));
+            if (group.thread != null) LockSupport.unpark(group.thread);
+        }
+        if (scheduler != null) {
+            drainAll();
+            return;
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stop the consumers after they processed everything published so far
+    public void shutdown() {
+        running = false;
+        for (ConsumerGroup group : groups) {
+            if (group.thread != null) LockSupport.unpark(group.thread);
+        }
+        if (scheduler != null) {
+            drainAll();
+            for (ConsumerGroup group : groups) group.shutdownConsumers();
+            return;
+        }
+        for (ConsumerGroup group : groups) {
+            try {
+                group.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // ===== producer side =====
+
+    // Claim a sequence for an event of the type without waiting, DROPPED if there is no room
+    long claim(ControlEvent.Type type) {
+        boolean lossy = type == ControlEvent.Type.SAMPLE || type == ControlEvent.Type.RATE
+                || type == ControlEvent.Type.LOG;
+        // critical events queue behind those still in the overflow, move them to the ring first
+        if (!lossy && overflowCursor.get() != overflowNext) {
+            moveOverflow();
+            if (overflowCursor.get() != overflowNext) return claimOverflow();
+        }
+        while (true) {
+            long seq = claimSlot(lossy ? lossyLimit : slots.length);
+            if (seq >= 0) return seq;
+            if (scheduler != null) {
+                // the consumers run on this thread, make room for the event
+                drainAll();
+                continue;
+            }
+            return lossy ? DROPPED : claimOverflow();
+        }
+    }
+
+    // Next sequence of the ring if fewer than limit slots are in use, else -1
+    private long claimSlot(int limit) {
+        while (true) {
+            long seq = cursor.get();
+            if (seq - limit >= minConsumerSequence(seq)) return -1;
+            if (cursor.compareAndSet(seq, seq + 1)) return seq;
+        }
+    }
+
+    // Next slot of the overflow encoded as DROPPED - 1 - overflow sequence, DROPPED if it is full
+    private long claimOverflow() {
+        while (true) {
+            long seq = overflowCursor.get();
+            if (seq - overflow.length >= overflowNext) return DROPPED;
+            if (overflowCursor.compareAndSet(seq, seq + 1)) return DROPPED - 1 - seq;
+        }
+    }
+
+    ControlEvent begin(long seq, ControlEvent.Type type, int section, float simTimeMs) {
+        ControlEvent e = seq >= 0 ? slots[(int) (seq & mask)] : overflow[(int) ((DROPPED - 1 - seq) & overflowMask)];
+        e.reset(type, section, clock.nanoTime(), simTimeMs);
+        return e;
+    }
+
+    void publish(long seq) {
+        if (seq < 0) {
+            long overflowSeq = DROPPED - 1 - seq;
+            overflowPublished.set((int) (overflowSeq & overflowMask), overflowSeq);
+            // an idle consumer moves it, a busy one does after its batch
+            for (ConsumerGroup group : groups) {
+                if (group.idle) LockSupport.unpark(group.thread);
+            }
+            return;
+        }
+        published.set((int) (seq & mask), seq);
+        if (scheduler != null) {
+            if (!drainScheduled.getAndSet(true)) {
+                scheduler.scheduleAt(scheduler.nanoTime(), DRAIN_PRIORITY, scheduledDrain);
+            }
+            return;
+        }
+        for (ConsumerGroup group : groups) {
+            if (group.idle) LockSupport.unpark(group.thread);
+        }
+    }
+
+    private long minConsumerSequence(long defaultValue) {
+        long min = defaultValue;
+        for (ConsumerGroup group : groups) {
+            min = Math.min(min, group.nextSequence);
+        }
+        return min;
+    }
+
+    // ===== consumer side =====
+
+    // Move the published overflow events into the free slots of the ring, in order. Called by the
+    // consumer threads and by critical producers, one thread at a time: the others skip it
+    private void moveOverflow() {
+        if (overflowNext == overflowCursor.get() || !moving.compareAndSet(false, true)) return;
+        try {
+            long next = overflowNext;
+            while (overflowPublished.get((int) (next & overflowMask)) == next) {
+                long seq = claimSlot(slots.length);
+                if (seq < 0) break; // the next batch frees more slots
+                slots[(int) (seq & mask)].copyFrom(overflow[(int) (next & overflowMask)]);
+                overflowNext = ++next; // frees the overflow slot for producers
+                publish(seq);
+            }
+        } finally {
+            moving.set(false);
+        }
+    }
+
+    private boolean hasOverflow() {
+        long next = overflowNext;
+        return overflowPublished.get((int) (next & overflowMask)) == next;
+    }
+
+    // Drain every group on the calling thread (scheduler driven ring only)
+    private synchronized void drainAll() {
+        for (ConsumerGroup group : groups) {
+            while (group.drainBatch()) { }
+            group.processDetaches();
+        }
+    }
+
+    private static final class Member {
+        final EventConsumer consumer;
+        final long startSequence; // events of the section before it are not for this consumer
+
+        Member(EventConsumer consumer, long startSequence) {
+            this.consumer = consumer;
+            this.startSequence = startSequence;
+        }
+    }
+
+    private static final class Detach {
+        final int section;
+        final long target; // everything before it must be processed first
+        final CountDownLatch done;
+
+        Detach(int section, long target, CountDownLatch done) {
+            this.section = section;
+            this.target = target;
+            this.done = done;
+        }
+    }
+
+    private final class ConsumerGroup implements Runnable {
+        private final String name;
+        private final Thread thread; // null when drained by the scheduler
+        private volatile long nextSequence;
+        private volatile boolean idle = false;
+
+        // consumers by section, copied on change
+        private volatile Member[] members = new Member[0];
+        private final ConcurrentLinkedQueue<Detach> detaching = new ConcurrentLinkedQueue<>();
+
+        // last sequence of every section in the current batch (consumer context only)
+        private long[] lastOfSection = new long[0];
+
+        ConsumerGroup(String name, long startSequence) {
+            this.name = name;
+            this.nextSequence = startSequence;
+            if (scheduler == null) {
+                thread = new Thread(this, "event-consumer-" + name);
+                thread.setDaemon(true);
+            } else {
+                thread = null;
+            }
+        }
+
+        synchronized void attach(int section, EventConsumer consumer, long startSequence) {
+            Member[] m = members;
+            if (section >= m.length) m = Arrays.copyOf(m, section + 1);
+            else m = m.clone();
+            if (m[section] != null) {
+                throw new IllegalStateException("Section " + section + " already has a " + name + " consumer");
+            }
+            m[section] = new Member(consumer, startSequence);
+            members = m;
+        }
+
+        private synchronized Member remove(int section) {
+            Member[] m = members;
+            if (section >= m.length || m[section] == null) return null;
+            Member member = m[section];
+            m = m.clone();
+            m[section] = null;
+            members = m;
+            return member;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                boolean stopping = !running;
+                boolean drained = drainBatch();
+                moveOverflow();
+                processDetaches();
+                if (drained) continue;
+                if (stopping) break;
+
+                idle = true;
+                // recheck after idle is visible, a producer seeing idle unparks this thread
+                if (running && !hasPublished() && !hasOverflow() && detaching.isEmpty()) LockSupport.park(this);
+                idle = false;
+            }
+            shutdownConsumers();
+        }
+
+        private boolean hasPublished() {
+            long next = nextSequence;
+            return published.get((int) (next & mask)) == next;
+        }
+
+        // Process all contiguous published events, false if there were none
+        boolean drainBatch() {
+            long next = nextSequence;
+            long last = next - 1;
+            while (published.get((int) ((last + 1) & mask)) == last + 1) {
+                last++;
+            }
+            if (last < next) return false;
+
+            Member[] m = members;
+            if (lastOfSection.length < m.length) lastOfSection = new long[m.length];
+            for (long seq = next; seq <= last; seq++) {
+                int section = slots[(int) (seq & mask)].section;
+                if (section < m.length) lastOfSection[section] = seq;
+            }
+            for (long seq = next; seq <= last; seq++) {
+                ControlEvent event = slots[(int) (seq & mask)];
+                int section = event.section;
+                Member member = section < m.length ? m[section] : null;
+                if (member != null && seq >= member.startSequence) {
+                    member.consumer.onEvent(event, seq, seq == lastOfSection[section]);
+                }
+            }
+            nextSequence = last + 1; // frees the slots for producers
+            return true;
+        }
+
+        void processDetaches() {
+            for (Iterator<Detach> it = detaching.iterator(); it.hasNext(); ) {
+                Detach d = it.next();
+                if (nextSequence < d.target) continue;
+                Member member = remove(d.section);
+                if (member != null) member.consumer.onShutdown();
+                it.remove();
+                d.done.countDown();
+            }
+        }
+
+        void shutdownConsumers() {
+            for (Member member : members) {
+                if (member != null) member.consumer.onShutdown();
+            }
+            members = new Member[0];
+            for (Detach d; (d = detaching.poll()) != null; ) d.done.countDown();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.prv.rt_system;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+// Where a PeriodicTask (not bound to a TaskDispatcher) runs its jobs
+public enum ExecutionBackend {
+    PLATFORM_THREAD,  // own OS thread with its priority, for hard deadline tasks
+    VIRTUAL_THREAD,   // own virtual thread, falls back to SHARED_POOL on runtimes without them
+    SHARED_POOL;      // jobs scheduled on a small pool shared by all such tasks
+
+    // shared carrier pool, one thread per core is enough since jobs never sleep in it
+    private static ScheduledThreadPoolExecutor sharedPool;
+
+    static synchronized ScheduledThreadPoolExecutor sharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "periodic-pool");
+                t.setDaemon(true);
+                return t;
+            });
+            sharedPool.setRemoveOnCancelPolicy(true);
+        }
+        return sharedPool;
+    }
+
+    // Thread.ofVirtual() is looked up reflectively so the code also runs on pre-21 runtimes
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_START;
+
+    static {
+        Method ofVirtual = null, name = null, start = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            start = builder.getMethod("start", Runnable.class);
+            ofVirtual.invoke(null); // throws when virtual threads are a disabled preview feature
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_START = start;
+    }
+
+    public static boolean virtualThreadsSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    // Start runnable on a new virtual thread
+    static Thread startVirtualThread(String name, Runnable runnable) {
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, name);
+            return (Thread) BUILDER_START.invoke(builder, runnable);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads not available", e);
+        }
+    }
+}
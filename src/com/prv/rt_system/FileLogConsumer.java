@@ -0,0 +1,70 @@
+package com.prv.rt_system;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import com.prv.rt_system.ControlSystem.AlarmType;
+import com.prv.rt_system.ControlSystem.ControlInput;
+
+// Writes control events as text lines to a log file, flushed once per batch
+public class FileLogConsumer implements EventConsumer {
+    private static final AlarmType[] ALARM_TYPES = AlarmType.values();
+    private static final ControlInput[] INPUTS = ControlInput.values();
+
+    private final BufferedWriter writer;
+    private final boolean logSamples;
+
+    public FileLogConsumer(String path, boolean logSamples) throws IOException {
+        this.writer = new BufferedWriter(new FileWriter(path, true));
+        this.logSamples = logSamples;
+    }
+
+    @Override
+    public void onEvent(ControlEvent event, long sequence, boolean endOfBatch) {
+        try {
+            switch (event.type) {
+            case LOG:
+                writeLine(event, event.source + " " + event.formatMessage());
+                break;
+            case ALARM:
+                writeLine(event, (event.flag ? "ALARM RAISED " : "ALARM CLEARED ") + ALARM_TYPES[event.channel]);
+                break;
+            case PUMP_COMMAND:
+                writeLine(event, event.flag ? "PUMP ON" : "PUMP OFF");
+                break;
+            case INPUT:
+                writeLine(event, "INPUT " + INPUTS[event.channel]);
+                break;
+            case SAMPLE:
+                if (logSamples) {
+                    writeLine(event, String.format("SAMPLE ch=%d value=%.4f status=%d", event.channel, event.value, event.status));
+                }
+                break;
+            case RATE:
+                if (logSamples) {
+                    writeLine(event, String.format("RATE ch=%d value=%.4f/s", event.channel, event.value));
+                }
+                break;
+            }
+
+            if (endOfBatch) writer.flush();
+        } catch (IOException e) {
+            System.err.println("Event log write failed: " + e.getMessage());
+        }
+    }
+
+    private void writeLine(ControlEvent event, String text) throws IOException {
+        writer.write(String.format("t: %8.2f s - %s", event.simTimeMs / 1000, text));
+        writer.newLine();
+    }
+
+    @Override
+    public void onShutdown() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Event log close failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.prv.rt_system;
+
+// Primitive signal source, avoids boxing a Float on every conversion
+@FunctionalInterface
+public interface FloatSupplier {
+    float getAsFloat();
+}
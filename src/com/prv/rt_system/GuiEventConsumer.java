@@ -0,0 +1,41 @@
+package com.prv.rt_system;
+
+import com.prv.rt_system.ControlSystem.AlarmType;
+import com.prv.rt_system.LogModel.Severity;
+
+// Forwards control events to the GUI; log entries are queued and shown once per GUI frame
+public class GuiEventConsumer implements EventConsumer {
+    private static final AlarmType[] ALARM_TYPES = AlarmType.values();
+
+    private final EnvGUI gui;
+
+    public GuiEventConsumer(EnvGUI gui) {
+        this.gui = gui;
+    }
+
+    @Override
+    public void onEvent(ControlEvent event, long sequence, boolean endOfBatch) {
+        switch (event.type) {
+        case LOG:
+            gui.appendLog(event.simTimeMs, Severity.INFO, event.source, event.formatMessage());
+            break;
+        case ALARM:
+            AlarmType type = ALARM_TYPES[event.channel];
+            if (event.flag) {
+                gui.appendLog(event.simTimeMs, Severity.ALARM, "alarm", "⚠ ALARM RAISED: " + type);
+                gui.showAlarm(type);
+            } else {
+                gui.appendLog(event.simTimeMs, Severity.INFO, "alarm", "✅ ALARM CLEARED: " + type);
+                gui.clearAlarm(type);
+            }
+            break;
+        case PUMP_COMMAND:
+            gui.setPumpState(event.flag);
+            break;
+        case SAMPLE:
+        case RATE:
+        default:
+            break; // samples are not shown in the log
+        }
+    }
+}
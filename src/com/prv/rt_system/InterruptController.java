@@ -0,0 +1,263 @@
+package com.prv.rt_system;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Simulated external interrupt controller (EXTI) of the MCU.
+// Every line has an analog input compared against a threshold with hysteresis: the comparator
+// output goes high at value >= threshold and low again at value <= threshold - hysteresis
+// (both low after reset). Edge triggered lines latch an interrupt on the configured edge,
+// level triggered lines keep latching while the output is at the active level. A line has one
+// pending bit, interrupts raised while it is still pending are coalesced. Pending interrupts of
+// enabled lines are dispatched by priority on the ISR context: an own thread in real time, an
+// event at the current instant of the scheduler in virtual time. Disabled lines keep their
+// interrupt pending until they are enabled. trigger() raises an interrupt by software.
+// Every line's input must be driven by one thread; unchanged comparator outputs cost no writes.
+public class InterruptController {
+
+    public enum Trigger { RISING, FALLING, BOTH, LEVEL_HIGH, LEVEL_LOW }
+
+    @FunctionalInterface
+    public interface Handler {
+        // called on the ISR context
+        void onInterrupt(int line);
+    }
+
+    public static final int MAX_LINES = 64;
+
+    private int lineCount = 0;
+    private final String[] names = new String[MAX_LINES];
+    private final Trigger[] triggers = new Trigger[MAX_LINES];
+    private final float[] thresholds = new float[MAX_LINES];
+    private final float[] hysteresis = new float[MAX_LINES];
+    private final int[] priorities = new int[MAX_LINES];
+    // set by enable/disable on any thread, read when raising and on the ISR context
+    private final AtomicReferenceArray<Handler> handlers = new AtomicReferenceArray<>(MAX_LINES);
+    private volatile int[] dispatchOrder = new int[0]; // line ids by priority, highest first
+
+    // statistics: raised and coalesced are counted by whoever raises, dispatched by the ISR context
+    private final AtomicLongArray raised = new AtomicLongArray(MAX_LINES);
+    private final AtomicLongArray coalesced = new AtomicLongArray(MAX_LINES);
+    private final AtomicLongArray dispatched = new AtomicLongArray(MAX_LINES);
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong outputs = new AtomicLong(); // comparator output bits
+    private final AtomicLong driven = new AtomicLong();  // lines that had an input
+
+    // real time ISR thread, started with the first interrupt
+    private final Thread isrThread;
+    private boolean started = false; // guarded by this
+    private volatile boolean running = true;
+
+    // virtual time
+    private volatile SimScheduler scheduler = null;
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+    private final Runnable scheduledDispatch = () -> {
+        dispatchScheduled.set(false);
+        dispatchPending();
+    };
+
+    public InterruptController() {
+        isrThread = new Thread(this::isrLoop, "exti-isr");
+        isrThread.setDaemon(true);
+        isrThread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    // Declare a line, returns its id. Higher priority lines are dispatched first
+    public synchronized int declareLine(String name, Trigger trigger, float threshold, float hysteresis, int priority) {
+        if (lineCount == MAX_LINES) {
+            throw new IllegalStateException("All " + MAX_LINES + " interrupt lines are declared");
+        }
+        if (hysteresis < 0) {
+            throw new IllegalArgumentException("Negative hysteresis: " + hysteresis);
+        }
+        int line = lineCount++;
+        names[line] = name;
+        triggers[line] = trigger;
+        thresholds[line] = threshold;
+        this.hysteresis[line] = hysteresis;
+        priorities[line] = priority;
+
+        Integer[] order = new Integer[lineCount];
+        for (int i = 0; i < lineCount; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> priorities[b] - priorities[a]);
+        int[] sorted = new int[lineCount];
+        for (int i = 0; i < lineCount; i++) sorted[i] = order[i];
+        dispatchOrder = sorted;
+        return line;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public String getLineName(int line) {
+        return names[line];
+    }
+
+    // comparator output after the last input
+    public boolean getOutput(int line) {
+        return (outputs.get() & 1L << line) != 0;
+    }
+
+    // input value at which the comparator output switches next: the threshold while it is low
+    // (reached from below), threshold - hysteresis while it is high (reached from above)
+    public float getSwitchingValue(int line) {
+        return getOutput(line) ? thresholds[line] - hysteresis[line] : thresholds[line];
+    }
+
+    // true if the line had an input and its comparator output is at the trigger's active level
+    // (high for RISING, BOTH and LEVEL_HIGH)
+    public boolean isAsserted(int line) {
+        if ((driven.get() & 1L << line) == 0) return false;
+        Trigger trigger = triggers[line];
+        return getOutput(line) != (trigger == Trigger.FALLING || trigger == Trigger.LEVEL_LOW);
+    }
+
+    public boolean isPending(int line) {
+        return (pending.get() & 1L << line) != 0;
+    }
+
+    // Unmask the line, an interrupt already pending is dispatched right away
+    public void enable(int line, Handler handler) {
+        handlers.set(line, handler);
+        if (isPending(line)) signal();
+    }
+
+    public void disable(int line) {
+        handlers.set(line, null);
+    }
+
+    // Drive the line's analog input (e.g. once per environment update)
+    public void setInput(int line, float value) {
+        long bit = 1L << line;
+        boolean out = (outputs.get() & bit) != 0;
+        boolean next = out ? value > thresholds[line] - hysteresis[line] : value >= thresholds[line];
+
+        switch (triggers[line]) {
+        case RISING:
+            if (next != out && next) raise(line);
+            break;
+        case FALLING:
+            if (next != out && !next) raise(line);
+            break;
+        case BOTH:
+            if (next != out) raise(line);
+            break;
+        case LEVEL_HIGH:
+            if (next) raise(line);
+            break;
+        case LEVEL_LOW:
+            if (!next) raise(line);
+            break;
+        }
+        if (next != out) {
+            if (next) outputs.getAndAdd(bit);
+            else outputs.getAndAdd(-bit);
+        }
+        if ((driven.get() & bit) == 0) driven.getAndAdd(bit);
+    }
+
+    // Software interrupt on the line, coalesced with a pending one like any other
+    public void trigger(int line) {
+        raise(line);
+    }
+
+    // Run the ISR context on the scheduler instead of an own thread, before the first interrupt
+    void driveBy(SimScheduler scheduler) {
+        shutdown();
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (started) isrThread.interrupt();
+    }
+
+    public long getRaised(int line) {
+        return raised.get(line);
+    }
+
+    public long getCoalesced(int line) {
+        return coalesced.get(line);
+    }
+
+    public long getDispatched(int line) {
+        return dispatched.get(line);
+    }
+
+    public String getStatsSummary() {
+        StringBuilder sb = new StringBuilder("EXTI:");
+        for (int line = 0; line < lineCount; line++) {
+            sb.append(String.format(" %s(%s) raised=%d coalesced=%d dispatched=%d%s", names[line], triggers[line],
+                    raised.get(line), coalesced.get(line), dispatched.get(line), isPending(line) ? " pending" : ""));
+        }
+        return sb.toString();
+    }
+
+    private void raise(int line) {
+        long bit = 1L << line;
+        long p;
+        do {
+            p = pending.get();
+            if ((p & bit) != 0) {
+                coalesced.incrementAndGet(line);
+                return;
+            }
+        } while (!pending.compareAndSet(p, p | bit));
+        raised.incrementAndGet(line);
+        if (handlers.get(line) != null) signal();
+    }
+
+    // wake up the ISR context
+    private void signal() {
+        SimScheduler s = scheduler;
+        if (s != null) {
+            if (!dispatchScheduled.getAndSet(true)) {
+                s.scheduleAt(s.nanoTime(), Thread.MAX_PRIORITY, scheduledDispatch);
+            }
+            return;
+        }
+        synchronized (this) {
+            if (!started) {
+                if (!running) return;
+                started = true;
+                isrThread.start();
+                return;
+            }
+        }
+        LockSupport.unpark(isrThread);
+    }
+
+    // Dispatch pending interrupts of enabled lines, highest priority first
+    private void dispatchPending() {
+        while (true) {
+            long p = pending.get();
+            int line = -1;
+            for (int candidate : dispatchOrder) {
+                if ((p & 1L << candidate) != 0 && handlers.get(candidate) != null) {
+                    line = candidate;
+                    break;
+                }
+            }
+            if (line < 0) return;
+            if (!pending.compareAndSet(p, p & ~(1L << line))) continue;
+
+            Handler handler = handlers.get(line);
+            dispatched.incrementAndGet(line);
+            if (handler != null) handler.onInterrupt(line);
+        }
+    }
+
+    private void isrLoop() {
+        while (running) {
+            dispatchPending();
+            LockSupport.park(this);
+            if (Thread.interrupted()) break;
+        }
+    }
+}
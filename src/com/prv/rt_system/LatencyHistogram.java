@@ -0,0 +1,85 @@
+package com.prv.rt_system;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-bucketed latency histogram (HDR style) for nanosecond values.
+// Every power of two range is split into 2^SUB_BUCKET_BITS linear sub-buckets, which keeps
+// the relative error around 3% over the whole range. Recording never allocates.
+// One thread records (the task running the job), any thread may query at runtime.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40; // values up to ~18 minutes in ns
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long totalCount = 0;
+    private volatile long sum = 0;
+    private volatile long max = 0;
+
+    // Record one value, negative values are recorded as 0
+    public void record(long valueNs) {
+        if (valueNs < 0) valueNs = 0;
+
+        int idx = bucketIndex(valueNs);
+        counts.lazySet(idx, counts.get(idx) + 1); // single writer, no CAS needed
+        sum += valueNs;
+        if (valueNs > max) max = valueNs;
+        totalCount++;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        long n = totalCount;
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0..100)
+    public long getValueAtPercentile(double percentile) {
+        long n = totalCount;
+        if (n == 0) return 0;
+
+        long target = (long) Math.ceil(percentile / 100.0 * n);
+        if (target < 1) target = 1;
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+    }
+
+    static long bucketLowerBound(int idx) {
+        if (idx < SUB_BUCKET_COUNT) return idx;
+
+        int magnitude = idx / SUB_BUCKET_COUNT;
+        int sub = idx % SUB_BUCKET_COUNT;
+        return (long) (SUB_BUCKET_COUNT + sub) << (magnitude - 1);
+    }
+
+    static long bucketUpperBound(int idx) {
+        if (idx == BUCKET_COUNT - 1) return Long.MAX_VALUE;
+        return bucketLowerBound(idx + 1) - 1;
+    }
+}
@@ -0,0 +1,186 @@
+package com.prv.rt_system;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.swing.AbstractListModel;
+
+// Bounded log of the GUI console, a list model for a virtualized JList.
+// Entries live in a ring of capacity entries, the oldest ones are dropped, so memory stays
+// constant over a whole shift. Any thread may append: entries are queued and moved into the ring
+// by flush() on the EDT, once per frame, with one list event for all of them. The list shows the
+// entries passing the filter (minimum severity, source, search text) through an index of their
+// sequence numbers; rows are formatted only when the list renders them.
+public class LogModel extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+
+    public enum Severity { INFO, WARNING, ALARM }
+
+    public static final int DEFAULT_CAPACITY = 20_000;
+
+    private static final class Entry {
+        final float timeMs;
+        final Severity severity;
+        final String source;
+        final String message;
+
+        Entry(float timeMs, Severity severity, String source, String message) {
+            this.timeMs = timeMs;
+            this.severity = severity;
+            this.source = source;
+            this.message = message;
+        }
+    }
+
+    // appended entries waiting for flush(), guarded by this
+    private ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private ArrayDeque<Entry> flushing = new ArrayDeque<>();
+    private long droppedPending = 0;
+
+    // ring of entries, slot = sequence % capacity (EDT only)
+    private final int capacity;
+    private final Entry[] entries;
+    private final String[] lines; // formatted rows, filled when first shown
+    private long nextSeq = 0;
+    private long dropped = 0;
+    private final Set<String> sources = new LinkedHashSet<>();
+
+    // filtered view: sequences of the shown entries, circular (EDT only)
+    private final long[] view;
+    private int viewHead = 0;
+    private int viewSize = 0;
+
+    private Severity minSeverity = Severity.INFO;
+    private String sourceFilter = null;  // null -> every source
+    private String searchText = "";      // lower case, empty -> no search
+
+    public LogModel() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LogModel(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        entries = new Entry[capacity];
+        lines = new String[capacity];
+        view = new long[capacity];
+    }
+
+    // Queue an entry (thread-safe), shown with the next flush()
+    public synchronized void append(float timeMs, Severity severity, String source, String message) {
+        if (pending.size() == capacity) {
+            // more than a ring full between two frames, the oldest would be dropped anyway
+            pending.pollFirst();
+            droppedPending++;
+        }
+        pending.add(new Entry(timeMs, severity, source, message));
+    }
+
+    // Move the queued entries into the ring and notify the list, EDT only.
+    // Returns false if nothing was queued
+    public boolean flush() {
+        ArrayDeque<Entry> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return false;
+            batch = pending;
+            pending = flushing;
+            flushing = batch;
+            dropped += droppedPending;
+            droppedPending = 0;
+        }
+
+        int oldSize = viewSize;
+        int removed = 0;
+        for (Entry entry; (entry = batch.pollFirst()) != null; ) {
+            long seq = nextSeq++;
+            int slot = (int) (seq % capacity);
+            if (seq >= capacity) {
+                // the slot's entry is the oldest one, it leaves the view from the front
+                if (viewSize > 0 && view[viewHead] == seq - capacity) {
+                    viewHead = (viewHead + 1) % capacity;
+                    viewSize--;
+                    removed++;
+                }
+                dropped++;
+            }
+            entries[slot] = entry;
+            lines[slot] = null;
+            sources.add(entry.source);
+            if (matches(entry)) {
+                view[(viewHead + viewSize) % capacity] = seq;
+                viewSize++;
+            }
+        }
+
+        if (removed > 0) fireIntervalRemoved(this, 0, removed - 1);
+        if (viewSize > oldSize - removed) fireIntervalAdded(this, oldSize - removed, viewSize - 1);
+        return true;
+    }
+
+    // Show only entries of at least minSeverity, of the source (null -> all) containing the
+    // search text (case insensitive, null or empty -> all), EDT only
+    public void setFilter(Severity minSeverity, String source, String search) {
+        this.minSeverity = minSeverity;
+        this.sourceFilter = source;
+        this.searchText = search == null ? "" : search.toLowerCase(Locale.ROOT);
+
+        int oldSize = viewSize;
+        viewHead = 0;
+        viewSize = 0;
+        for (long seq = Math.max(0, nextSeq - capacity); seq < nextSeq; seq++) {
+            if (matches(entries[(int) (seq % capacity)])) view[viewSize++] = seq;
+        }
+        if (oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+        if (viewSize > 0) fireIntervalAdded(this, 0, viewSize - 1);
+    }
+
+    private boolean matches(Entry entry) {
+        return entry.severity.ordinal() >= minSeverity.ordinal()
+                && (sourceFilter == null || sourceFilter.equals(entry.source))
+                && (searchText.isEmpty() || entry.message.toLowerCase(Locale.ROOT).contains(searchText));
+    }
+
+    @Override
+    public int getSize() {
+        return viewSize;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        int slot = slotAt(index);
+        String line = lines[slot];
+        if (line == null) {
+            Entry entry = entries[slot];
+            line = String.format("t: %5.2f s - [%s] %s", entry.timeMs / 1000, entry.source, entry.message);
+            lines[slot] = line;
+        }
+        return line;
+    }
+
+    public Severity getSeverityAt(int index) {
+        return entries[slotAt(index)].severity;
+    }
+
+    private int slotAt(int index) {
+        return (int) (view[(viewHead + index) % capacity] % capacity);
+    }
+
+    // entries held by the ring (shown or not)
+    public int getEntryCount() {
+        return (int) Math.min(nextSeq, capacity);
+    }
+
+    // entries dropped because the ring was full
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    // sources seen so far, in order of appearance
+    public Set<String> getSources() {
+        return sources;
+    }
+}
@@ -1,50 +1,257 @@
 package com.prv.rt_system;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.prv.EnvConfig;
 import com.prv.EnvironmentState;
 
 
 // MCU abstraction encapsulating and simulating and wiring ADC devices
+// Channels live in a registry of dense arrays indexed by channel id
 public class MCU {
-	public static MCU instance = new MCU();   // singleton instance
-	
-	public ADC adc1_co = new ADC(() -> EnvironmentState.getInstance().getCoConcentration());
-	public ADC adc2_ch4 = new ADC(() -> EnvironmentState.getInstance().getCh4Concentration());
-	public ADC adc3_af = new ADC(() -> EnvironmentState.getInstance().getAirFlow());
-	public ADC adc4_wf = new ADC(() -> EnvironmentState.getInstance().getPumpWaterFlow());
-	
-    public void brakeDownADCDevice(int adc_no) {
-    	switch (adc_no) {
-    	case 1:
-    		adc1_co.brakeDownADCDevice();
-    		break;
-    	case 2:
-    		adc2_ch4.brakeDownADCDevice();
-    		break;
-    	case 3:
-    		adc3_af.brakeDownADCDevice();
-    		break;
-    	case 4:
-    		adc4_wf.brakeDownADCDevice();
-    		break;
-    	}
+	
+	// environment the channels measure, attached when the environment is created
+	private volatile EnvironmentState environment;
+	
+	// one timer thread completes conversions of all ADCs, possibly shared with other MCUs
+	private static final int TIMER_TICK_MS = 1;
+	private static final int TIMER_WHEEL_SIZE = 256;
+	private final TimerWheel conversionTimer;
+	private final boolean ownsTimer;
+	
+	// value used for a limit that is not set
+	public static final float NO_LOW_LIMIT = Float.NEGATIVE_INFINITY;
+	public static final float NO_HIGH_LIMIT = Float.POSITIVE_INFINITY;
+	
+	// channel registry, index = channel id
+	private int channelCount = 0;
+	private ADC[] adcs = new ADC[8];
+	private String[] names = new String[8];
+	private ChannelType[] types = new ChannelType[8];
+	private String[] units = new String[8];
+	private float[] lowLimits = new float[8];
+	private float[] highLimits = new float[8];
+	private String[] filterSpecs = new String[8];
+	private final Map<String, Integer> idsByName = new HashMap<>();
+	
+	// primary channels, always declared first
+	public final ADC adc1_co;
+	public final ADC adc2_ch4;
+	public final ADC adc3_af;
+	public final ADC adc4_wf;
+	
+	// EXTI lines of the water level probe comparators, declared first
+	public static final int EXTI_WATER_LEVEL_HIGH = 0;
+	public static final int EXTI_WATER_LEVEL_LOW = 1;
+	public static final float WATER_LEVEL_HYSTERESIS = 0.5f; // cm
+	private final InterruptController exti = new InterruptController();
+	
+	// MCU with its own conversion timer thread (started with the first conversion)
+	public MCU() {
+		this(newConversionTimer(), true);
+	}
+	
+	// Independent MCU, conversions run on the scheduler (null -> own timer thread)
+	public MCU(SimScheduler scheduler) {
+		this();
+		if (scheduler != null) setScheduler(scheduler);
+	}
+	
+	// Conversions completed by a timer shared with other MCUs (see newConversionTimer),
+	// the timer is not stopped by shutdown()
+	public MCU(TimerWheel sharedTimer) {
+		this(sharedTimer, false);
+	}
+	
+	private MCU(TimerWheel conversionTimer, boolean ownsTimer) {
+		this.conversionTimer = conversionTimer;
+		this.ownsTimer = ownsTimer;
+		adc1_co = adcOf(declareChannel("ADC1 CO", ChannelType.CO, "%", NO_LOW_LIMIT, EnvConfig.CO_CONCENTRATION_LIMIT));
+		adc2_ch4 = adcOf(declareChannel("ADC2 CH4", ChannelType.CH4, "%", NO_LOW_LIMIT, EnvConfig.CH4_CONCENTRATION_LIMIT));
+		adc3_af = adcOf(declareChannel("ADC3 AirFlow", ChannelType.AIR_FLOW, "m^3/s", EnvConfig.AIR_FLOW_LIMIT, NO_HIGH_LIMIT));
+		adc4_wf = adcOf(declareChannel("ADC4 PumpWF", ChannelType.WATER_FLOW, "cm/s", NO_LOW_LIMIT, NO_HIGH_LIMIT));
+		
+		// high: rising edge at the high level; low: falling edge at the low level, output back high above it + hysteresis
+		exti.declareLine("WATER_LEVEL_HIGH", InterruptController.Trigger.RISING,
+				EnvConfig.HIGH_WATER_LEVEL, WATER_LEVEL_HYSTERESIS, 2);
+		exti.declareLine("WATER_LEVEL_LOW", InterruptController.Trigger.FALLING,
+				EnvConfig.LOW_WATER_LEVEL + WATER_LEVEL_HYSTERESIS, WATER_LEVEL_HYSTERESIS, 1);
+	}
+	
+	// Conversion timer that can be shared by the MCUs of many sections
+	public static TimerWheel newConversionTimer() {
+		return new TimerWheel(TIMER_TICK_MS, TIMER_WHEEL_SIZE);
+	}
+	
+	// Declare a channel reading the environment quantity of the given type, returns channel id
+	public int declareChannel(String name, ChannelType type, String unit, float lowLimit, float highLimit) {
+		return declareChannel(name, type, unit, sourceFor(type), lowLimit, highLimit);
+	}
+	
+	public synchronized int declareChannel(String name, ChannelType type, String unit, FloatSupplier source,
+			float lowLimit, float highLimit) {
+		if (idsByName.containsKey(name)) {
+			throw new IllegalArgumentException("Channel already declared: " + name);
+		}
+		if (channelCount == adcs.length) {
+			int capacity = adcs.length * 2;
+			adcs = Arrays.copyOf(adcs, capacity);
+			names = Arrays.copyOf(names, capacity);
+			types = Arrays.copyOf(types, capacity);
+			units = Arrays.copyOf(units, capacity);
+			lowLimits = Arrays.copyOf(lowLimits, capacity);
+			highLimits = Arrays.copyOf(highLimits, capacity);
+			filterSpecs = Arrays.copyOf(filterSpecs, capacity);
+		}
+		
+		int id = channelCount++;
+		adcs[id] = new ADC(source, conversionTimer);
+		names[id] = name;
+		types[id] = type;
+		units[id] = unit;
+		lowLimits[id] = lowLimit;
+		highLimits[id] = highLimit;
+		filterSpecs[id] = "NONE";
+		idsByName.put(name, id);
+		return id;
+	}
+	
+	// Declare channels from a config with one "name,type,unit,lowLimit,highLimit[,filter]" line per channel.
+	// Empty limits mean no limit, filter is a SignalFilterBank spec (e.g. MEDIAN:5), lines starting with # are comments.
+	public void declareChannels(Reader config) throws IOException {
+		BufferedReader reader = new BufferedReader(config);
+		String line;
+		int lineNo = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNo++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			
+			String[] fields = line.split(",", -1);
+			if (fields.length != 5 && fields.length != 6) {
+				throw new IOException("Channel config line " + lineNo + ": expected 5 or 6 fields, got " + fields.length);
+			}
+			try {
+				int id = declareChannel(fields[0].trim(), ChannelType.valueOf(fields[1].trim()), fields[2].trim(),
+						parseLimit(fields[3], NO_LOW_LIMIT), parseLimit(fields[4], NO_HIGH_LIMIT));
+				if (fields.length == 6 && !fields[5].trim().isEmpty()) {
+					setFilterSpec(id, fields[5].trim());
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Channel config line " + lineNo + ": " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	private static float parseLimit(String field, float noLimit) {
+		field = field.trim();
+		return field.isEmpty() ? noLimit : Float.parseFloat(field);
+	}
+	
+	private FloatSupplier sourceFor(ChannelType type) {
+		switch (type) {
+		case CO:
+			return () -> environment.getCoConcentration();
+		case CH4:
+			return () -> environment.getCh4Concentration();
+		case AIR_FLOW:
+			return () -> environment.getAirFlow();
+		case WATER_FLOW:
+		default:
+			return () -> environment.getPumpWaterFlow();
+		}
+	}
+	
+	public void attachEnvironment(EnvironmentState env) {
+		environment = env;
+	}
+	
+	// registry lookups, O(1) by channel id
+	public int getChannelCount() {
+		return channelCount;
+	}
+	
+	public ADC adcOf(int channelId) {
+		return adcs[channelId];
+	}
+	
+	public String getChannelName(int channelId) {
+		return names[channelId];
+	}
+	
+	public ChannelType getChannelType(int channelId) {
+		return types[channelId];
+	}
+	
+	public String getChannelUnit(int channelId) {
+		return units[channelId];
+	}
+	
+	public float getLowLimit(int channelId) {
+		return lowLimits[channelId];
+	}
+	
+	public float getHighLimit(int channelId) {
+		return highLimits[channelId];
+	}
+	
+	// filter applied to the channel's samples before threshold checks
+	public String getFilterSpec(int channelId) {
+		return filterSpecs[channelId];
+	}
+	
+	public void setFilterSpec(int channelId, String spec) {
+		new SignalFilterBank(1).configure(0, spec); // validate
+		filterSpecs[channelId] = spec;
+	}
+	
+	// channel id by name, -1 if not declared
+	public synchronized int getChannelId(String name) {
+		Integer id = idsByName.get(name);
+		return id == null ? -1 : id;
+	}
+	
+	// fault injection by channel id
+    public void brakeDownADCDevice(int channelId) {
+    	adcs[channelId].brakeDownADCDevice();
     }
     
-    public void fixADCDevice(int adc_no) {
-    	switch (adc_no) {
-    	case 1:
-    		adc1_co.fixADCDevice();
-    		break;
-    	case 2:
-    		adc2_ch4.fixADCDevice();
-    		break;
-    	case 3:
-    		adc3_af.fixADCDevice();
-    		break;
-    	case 4:
-    		adc4_wf.fixADCDevice();
-    		break;
+    public void fixADCDevice(int channelId) {
+    	adcs[channelId].fixADCDevice();
+    }
+    
+    // Switch all ADCs to continuous scan mode
+    public static final int SCAN_RING_CAPACITY = 1024;
+    public void startScan(int samplePeriodMs) {
+    	for (int id = 0; id < channelCount; id++) {
+    		adcs[id].startContinuous(samplePeriodMs, SCAN_RING_CAPACITY);
     	}
     }
     
-	private MCU() {}
+    public InterruptController getInterruptController() {
+    	return exti;
+    }
+    
+    // Water level probe input, feeds both water level comparators (called by the environment)
+    public void setWaterLevelProbe(float levelCm) {
+    	exti.setInput(EXTI_WATER_LEVEL_HIGH, levelCm);
+    	exti.setInput(EXTI_WATER_LEVEL_LOW, levelCm);
+    }
+    
+    // Run ADC conversions and interrupt dispatch on the scheduler (e.g. virtual time), before any is started
+    void setScheduler(SimScheduler scheduler) {
+    	conversionTimer.driveBy(scheduler);
+    	exti.driveBy(scheduler);
+    }
+    
+    public void shutdown() {
+    	if (ownsTimer) conversionTimer.shutdown();
+    	exti.shutdown();
+    }
+    
 }
@@ -1,16 +1,51 @@
 package com.prv.rt_system;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 // Periodic task abstraction with drift correction and priorities
+// Runs on a SimScheduler when one is set, on a shared TaskDispatcher when one is given,
+// otherwise on the selected ExecutionBackend
 public class PeriodicTask extends Thread {
 
     private final long periodNs;
     private final Runnable task;
+    private final TaskDispatcher dispatcher;
     private volatile boolean running = true;
-    private long maxExecTime = 0;
+
+    // timing statistics, recorded by whichever thread runs the job
+    private final LatencyHistogram execTime = new LatencyHistogram();
+    private final LatencyHistogram releaseLateness = new LatencyHistogram();
+    private final LatencyHistogram responseTime = new LatencyHistogram();
+    private volatile long deadlineMisses = 0;
+    private volatile long skippedActivations = 0;
+    private final LatencyHistogram wakeupError = new LatencyHistogram();
+    private ReleaseTimer releaseTimer = ReleaseTimer.SLEEP;
+
+    // configured worst case execution time used by the startup schedulability analysis
+    private volatile double wcetBudgetMs = 0;
+
+    // next release time, owned by the dispatcher in dispatcher mode
+    long nextRelease;
+
+    private ExecutionBackend backend = ExecutionBackend.PLATFORM_THREAD;
+    private volatile Thread virtualThread = null;
+    private volatile Future<?> pooledJob = null;
+    private final Runnable pooledJobRunner = this::runPooledJob;
+
+    // scheduler mode: jobs are actions of the scheduler, times are taken from its clock
+    private SimScheduler scheduler = null;
+    private SimClock clock = SimClock.SYSTEM;
+    private final Runnable scheduledJobRunner = this::runScheduledJob;
 
     public PeriodicTask(long periodMs, Runnable task, int priority) {
+        this(periodMs, task, priority, null);
+    }
+
+    public PeriodicTask(long periodMs, Runnable task, int priority, TaskDispatcher dispatcher) {
         this.periodNs = periodMs * 1_000_000L; // convert ms to ns
         this.task = task;
+        this.dispatcher = dispatcher;
 
         // Clamp priority to valid Java range [Thread.MIN_PRIORITY, Thread.MAX_PRIORITY]
         if (priority < Thread.MIN_PRIORITY) {
@@ -18,11 +53,131 @@ public class PeriodicTask extends Thread {
         } else if (priority > Thread.MAX_PRIORITY) {
             priority = Thread.MAX_PRIORITY;
         }
-        setPriority(priority); 
+        setPriority(priority);
     }
 
     public double getMaxExecTimeMs() {
-        return maxExecTime / 1_000_000.0;
+        return execTime.getMax() / 1_000_000.0;
+    }
+
+    public LatencyHistogram getExecTimeHistogram() {
+        return execTime;
+    }
+
+    // time between the planned release and the actual start of the job
+    public LatencyHistogram getReleaseLatenessHistogram() {
+        return releaseLateness;
+    }
+
+    // time between the planned release and the end of the job
+    public LatencyHistogram getResponseTimeHistogram() {
+        return responseTime;
+    }
+
+    // how late the task thread woke up relative to the planned release (own thread modes only)
+    public LatencyHistogram getWakeupErrorHistogram() {
+        return wakeupError;
+    }
+
+    public long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    public long getSkippedActivations() {
+        return skippedActivations;
+    }
+
+    // One line summary of the timing statistics (all times in ms)
+    public String getStatsSummary() {
+        String summary = String.format("%s jobs=%d misses=%d skipped=%d | exec %s | lateness %s | response %s",
+                getName(), execTime.getCount(), deadlineMisses, skippedActivations,
+                percentiles(execTime), percentiles(releaseLateness), percentiles(responseTime));
+        if (wakeupError.getCount() > 0) {
+            summary += String.format(" | wakeup(%s) %s", releaseTimer.getMode(), percentiles(wakeupError));
+        }
+        return summary;
+    }
+
+    private static String percentiles(LatencyHistogram h) {
+        return String.format("p50=%.3f p99=%.3f max=%.3f",
+                h.getValueAtPercentile(50) / 1_000_000.0,
+                h.getValueAtPercentile(99) / 1_000_000.0,
+                h.getMax() / 1_000_000.0);
+    }
+
+    public double getWcetBudgetMs() {
+        return wcetBudgetMs;
+    }
+
+    public void setWcetBudgetMs(double budgetMs) {
+        this.wcetBudgetMs = budgetMs;
+    }
+
+    public long getPeriodNs() {
+        return periodNs;
+    }
+
+    boolean isActive() {
+        return running;
+    }
+
+    public ExecutionBackend getBackend() {
+        return backend;
+    }
+
+    // Select where jobs run, must be called before start(); ignored in dispatcher mode
+    public void setBackend(ExecutionBackend backend) {
+        if (backend == ExecutionBackend.VIRTUAL_THREAD && !ExecutionBackend.virtualThreadsSupported()) {
+            backend = ExecutionBackend.SHARED_POOL;
+        }
+        this.backend = backend;
+    }
+
+    public ReleaseTimer getReleaseTimer() {
+        return releaseTimer;
+    }
+
+    // Select how the task waits for its next release (own thread / virtual thread modes)
+    public void setReleaseTimer(ReleaseTimer releaseTimer) {
+        this.releaseTimer = releaseTimer;
+    }
+
+    public SimScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Run jobs as actions of the scheduler (e.g. in virtual time), must be called before start();
+    // takes precedence over the dispatcher and the backend
+    public void setScheduler(SimScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.clock = scheduler != null ? scheduler : SimClock.SYSTEM;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (scheduler != null) {
+            nextRelease = scheduler.nanoTime();
+            scheduler.scheduleAt(nextRelease, getPriority(), scheduledJobRunner);
+            return;
+        }
+        if (dispatcher != null) {
+            // no own thread, jobs are released by the dispatcher
+            dispatcher.register(this);
+            return;
+        }
+
+        switch (backend) {
+        case VIRTUAL_THREAD:
+            virtualThread = ExecutionBackend.startVirtualThread(getName(), this::run);
+            break;
+        case SHARED_POOL:
+            nextRelease = System.nanoTime();
+            pooledJob = ExecutionBackend.sharedPool().submit(pooledJobRunner);
+            break;
+        case PLATFORM_THREAD:
+        default:
+            super.start();
+        }
     }
 
     @Override
@@ -30,34 +185,81 @@ public class PeriodicTask extends Thread {
         long nextRelease = System.nanoTime();
 
         while (running) {
-            // 1. Execute task
-            long start = System.nanoTime();
-            task.run();
-            long duration = System.nanoTime() - start;
-            if (duration > maxExecTime) {
-                maxExecTime = duration;
-            }
+            // 1. Execute task and compute next release time
+            nextRelease = runJob(nextRelease);
 
-            // 2. Compute next release time
-            nextRelease += periodNs;
-
-            // 3. Sleep until next release
-            long sleepTime = nextRelease - System.nanoTime();
-            if (sleepTime > 0) {
+            // 2. Wait until next release
+            if (nextRelease - System.nanoTime() > 0) {
                 try {
-                    Thread.sleep(sleepTime / 1_000_000, (int)(sleepTime % 1_000_000));
+                    releaseTimer.waitUntil(nextRelease);
                 } catch (InterruptedException e) {
                     break;
                 }
-            } else {
-                // deadline miss, reset periodic activation
-                nextRelease = System.nanoTime();
+                wakeupError.record(System.nanoTime() - nextRelease);
             }
         }
     }
 
+    // Shared pool mode: run one job and schedule the next one at its absolute release time
+    private void runPooledJob() {
+        if (!running) return;
+
+        nextRelease = runJob(nextRelease);
+        if (running) {
+            pooledJob = ExecutionBackend.sharedPool().schedule(pooledJobRunner,
+                    nextRelease - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Scheduler mode: run one job and schedule the next one at its release time
+    private void runScheduledJob() {
+        if (!running) return;
+
+        nextRelease = runJob(nextRelease);
+        if (running) {
+            scheduler.scheduleAt(nextRelease, getPriority(), scheduledJobRunner);
+        }
+    }
+
+    // Execute one job released at 'release' and return the release time of the next one
+    long runJob(long release) {
+        long start = clock.nanoTime();
+        task.run();
+        long now = clock.nanoTime();
+
+        execTime.record(now - start);
+        releaseLateness.record(start - release);
+        responseTime.record(now - release);
+
+        long next = release + periodNs;
+        if (next - now <= 0) {
+            // deadline miss, reset periodic activation
+            // the reset release replaces the missed one, further whole periods are lost
+            deadlineMisses++;
+            skippedActivations += Math.max(0, (now - release) / periodNs - 1);
+            next = now;
+        }
+        return next;
+    }
+
     public void shutdown() {
         running = false;
-        this.interrupt();
+        if (scheduler != null) {
+            return; // pending release does nothing
+        }
+        if (dispatcher != null) {
+            dispatcher.unregister(this);
+            return;
+        }
+
+        Thread vt = virtualThread;
+        Future<?> job = pooledJob;
+        if (vt != null) {
+            vt.interrupt();
+        } else if (job != null) {
+            job.cancel(false);
+        } else {
+            this.interrupt();
+        }
     }
 }
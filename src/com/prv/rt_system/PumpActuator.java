@@ -0,0 +1,8 @@
+package com.prv.rt_system;
+
+// Pump hardware driven by the pump controller (simulated environment, or a stub during replay)
+public interface PumpActuator {
+
+    // called on every command and once per controller period with the current pump state
+    void setPumpOn(boolean on);
+}
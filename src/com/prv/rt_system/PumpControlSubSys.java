@@ -1,22 +1,31 @@
 package com.prv.rt_system;
 
 import com.prv.EnvConfig;
-import com.prv.EnvironmentState;
 import com.prv.rt_system.ControlSystem.AlarmType;
 
 public class PumpControlSubSys {
+	public static final int TASK_PERIOD_MS = 140;
+	
 	private ControlSystem controlSystem;
-	private EnvGUI gui;
+	private EventBus events;
+	private PumpActuator pump;
 	
 	public PeriodicTask pumpController;
 	public PeriodicTask waterFlowMonitor;
 	
-	PumpControlSubSys(ControlSystem ctrlSys, EnvGUI envGUI) {
+	PumpControlSubSys(ControlSystem ctrlSys, EventBus eventBus, PumpActuator pumpActuator) {
 		this.controlSystem = ctrlSys;
-		this.gui = envGUI;
+		this.events = eventBus;
+		this.pump = pumpActuator;
+	}
+	
+	// create and start the periodic pump tasks (replay calls the task bodies directly instead)
+	void start() {
+		pumpController = controlSystem.newPeriodicTask(TASK_PERIOD_MS, this::pumpControllerTask, 6, ControlSystem.PUMP_TASK_WCET_BUDGET_MS);
+		waterFlowMonitor = controlSystem.newPeriodicTask(TASK_PERIOD_MS, this::pumpWaterFlowMonitorTask, 7, ControlSystem.PUMP_TASK_WCET_BUDGET_MS);
 		
-		pumpController = new PeriodicTask(140, this::pumpControllerTask, 6);
-		waterFlowMonitor = new PeriodicTask(140, this::pumpWaterFlowMonitorTask, 7);
+		pumpController.setName("pumpController");
+		waterFlowMonitor.setName("waterFlowMonitor");
 		
 		pumpController.start();
 		waterFlowMonitor.start();
@@ -32,19 +41,25 @@ public class PumpControlSubSys {
     private volatile boolean operatorSignalOn = false;
     private volatile boolean operatorSignalOff = false;
 
-    private boolean waterLevelHighFlag = false;
-    private boolean waterLevelLowFlag = false;
+    // set on the ISR context
+    private volatile boolean waterLevelHighFlag = false;
+    private volatile boolean waterLevelLowFlag = false;
     
     public void setManualControl(boolean pump_on) {
     	operatorSignalOn = pump_on;
     	operatorSignalOff = !pump_on;
     }
     
-    public void setwaterLevelHighFlag() {
+    // return false if the flag was still pending
+    public boolean setwaterLevelHighFlag() {
+    	boolean pending = waterLevelHighFlag;
     	waterLevelHighFlag = true;
+    	return !pending;
     }
-    public void setwaterLevelLowFlag() {
+    public boolean setwaterLevelLowFlag() {
+    	boolean pending = waterLevelLowFlag;
     	waterLevelLowFlag = true;
+    	return !pending;
     }
     
 	public void pumpControllerTask() {
@@ -52,7 +67,7 @@ public class PumpControlSubSys {
 		if (controlSystem.getCH4Concentration() > EnvConfig.CH4_CONCENTRATION_LIMIT) {
     		if (this.pumpIsOn) {
     			this.turnPumpOff();
-        		gui.log("PUMP OFF - CH4 CONCENTRATION TOO HIGH");
+        		events.publishLog("pump", "PUMP OFF - CH4 CONCENTRATION TOO HIGH");
     		}
     		return;
     	}
@@ -61,14 +76,14 @@ public class PumpControlSubSys {
     		// clear flag
     		operatorSignalOn = false;
     		this.turnPumpOn();
-    		gui.log("PUMP ON - OPERATOR SIGNAL");
+    		events.publishLog("pump", "PUMP ON - OPERATOR SIGNAL");
 
     	}
     	if (operatorSignalOff) {
     		// clear flag
     		operatorSignalOff = false;
     		this.turnPumpOff();
-    		gui.log("PUMP OFF - OPERATOR SIGNAL");
+    		events.publishLog("pump", "PUMP OFF - OPERATOR SIGNAL");
     	}
 		
     	if (waterLevelHighFlag) {
@@ -76,7 +91,7 @@ public class PumpControlSubSys {
     		
     		if (!pumpIsOn) {
     			this.turnPumpOn();
-    			gui.log("PUMP ON - WATER LEVEL HIGH");
+    			events.publishLog("pump", "PUMP ON - WATER LEVEL HIGH");
     		}
     	}
     	if (waterLevelLowFlag) {
@@ -84,24 +99,26 @@ public class PumpControlSubSys {
     		
     		if (pumpIsOn) {
     			this.turnPumpOff();
-    			gui.log("PUMP OFF - WATER LEVEL LOW");
+    			events.publishLog("pump", "PUMP OFF - WATER LEVEL LOW");
     		}
     	}
     	
-    	EnvironmentState.getInstance().setPumpIsOn(this.pumpIsOn);
+    	pump.setPumpOn(this.pumpIsOn);
     }
 	
 	
     // helper
     public void turnPumpOn() {
 		pumpIsOn = true;
-    	EnvironmentState.getInstance().turnPumpOn();
-    	gui.setPumpState(true);
+    	pump.setPumpOn(true);
+    	events.publishPumpCommand(true);
+    	controlSystem.retriggerWaterLevelInterrupt(MCU.EXTI_WATER_LEVEL_LOW);
     }
     public void turnPumpOff() {
     	pumpIsOn = false;
-    	EnvironmentState.getInstance().turnPumpOff();
-    	gui.setPumpState(false);
+    	pump.setPumpOn(false);
+    	events.publishPumpCommand(false);
+    	controlSystem.retriggerWaterLevelInterrupt(MCU.EXTI_WATER_LEVEL_HIGH);
     }
     
     
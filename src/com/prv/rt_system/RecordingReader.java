@@ -0,0 +1,122 @@
+package com.prv.rt_system;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// Sequential reader of a BinaryRecorder recording. next() moves to the following record and
+// exposes it through the public fields (reused, no allocation per record). Reading stops at
+// the end of the recording or at the first torn record.
+// A recording may hold several runs (sessions): a session starts with the first record, with a
+// segment flagged SESSION_START, or where the simulation time jumps back (runs appended to one
+// segment by older recorders).
+public class RecordingReader implements AutoCloseable {
+
+    private static final ControlEvent.Type[] TYPES = ControlEvent.Type.values();
+
+    // backward jump of the simulation time that starts a new session, far beyond the
+    // reordering of concurrent producers
+    static final float TIME_RESET_MS = 1000;
+
+    private final File[] segments;
+    private int segmentIndex = -1;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentSize;
+    private int position;
+    private long expectedSeq = -1;
+    private boolean segmentStartsSession = false;
+
+    // current record
+    public long seq;
+    public long timestampNs;
+    public float simTimeMs;
+    public ControlEvent.Type type;
+    public int channelId;     // MCU channel of a sample, alarm id of an alarm, input id of an input
+    public float value;
+    public int status;        // ADCStatus ordinal of a sample
+    public boolean flag;      // alarm raised / pump on
+    public int session = -1;  // session of the current record, from 0
+    public boolean sessionStart; // current record is the first one of its session
+
+    public RecordingReader(File directory) throws IOException {
+        this(directory, "session");
+    }
+
+    public RecordingReader(File directory, String prefix) throws IOException {
+        this.segments = BinaryRecorder.listSegments(directory, prefix);
+        if (segments.length == 0) {
+            throw new IOException("No recording '" + prefix + "' in " + directory);
+        }
+    }
+
+    // Advance to the next record, false at the end of the recording
+    public boolean next() throws IOException {
+        while (true) {
+            if (segment == null || position + BinaryRecorder.RECORD_SIZE > segmentSize) {
+                if (!openNextSegment()) return false;
+                continue;
+            }
+            if (!BinaryRecorder.isValidRecord(segment, position, expectedSeq)) {
+                // tail of the segment (or torn write), continue in the next one if there is any
+                if (segmentIndex + 1 < segments.length) {
+                    if (!openNextSegment()) return false;
+                    continue;
+                }
+                return false;
+            }
+
+            int p = position;
+            float previousTimeMs = simTimeMs;
+            seq = segment.getLong(p);
+            timestampNs = segment.getLong(p + 8);
+            simTimeMs = segment.getFloat(p + 16);
+            sessionStart = session < 0 || segmentStartsSession || simTimeMs < previousTimeMs - TIME_RESET_MS;
+            if (sessionStart) session++;
+            segmentStartsSession = false;
+            value = segment.getFloat(p + 20);
+            int packed = segment.getInt(p + 24);
+            channelId = packed & 0xFFFF;
+            type = TYPES[((packed >>> 16) & 0xFF) - 1];
+            status = (packed >>> 24) & 0xFF;
+            flag = status != 0;
+
+            position = p + BinaryRecorder.RECORD_SIZE;
+            expectedSeq = seq + 1;
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+        segment = null;
+    }
+
+    private boolean openNextSegment() throws IOException {
+        close();
+        if (++segmentIndex >= segments.length) return false;
+
+        File file = segments[segmentIndex];
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        segmentSize = channel.size();
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        if (segment.getInt(0) != BinaryRecorder.MAGIC || segment.getInt(8) != BinaryRecorder.RECORD_SIZE) {
+            throw new IOException("Not a recorder segment: " + file);
+        }
+
+        long firstSeq = segment.getLong(16);
+        if (expectedSeq >= 0 && firstSeq != expectedSeq) {
+            throw new IOException("Gap in recording before " + file + ": expected record " + expectedSeq + ", found " + firstSeq);
+        }
+        expectedSeq = firstSeq;
+        segmentStartsSession = (segment.getInt(24) & BinaryRecorder.FLAG_SESSION_START) != 0;
+        position = BinaryRecorder.HEADER_SIZE;
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+package com.prv.rt_system;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Waits until an absolute System.nanoTime() release instant.
+// SLEEP relies on Thread.sleep, which may overshoot by a millisecond or more.
+// PARK_SPIN parks until spinMarginNs before the release and busy-spins the rest of the way,
+// trading a little CPU for wake-ups that are within microseconds of the release.
+public final class ReleaseTimer {
+
+    public enum Mode {
+        SLEEP,
+        PARK_SPIN
+    }
+
+    public static final ReleaseTimer SLEEP = new ReleaseTimer(Mode.SLEEP, 0);
+
+    private final Mode mode;
+    private final long spinMarginNs;
+
+    private ReleaseTimer(Mode mode, long spinMarginNs) {
+        this.mode = mode;
+        this.spinMarginNs = spinMarginNs;
+    }
+
+    public static ReleaseTimer parkSpin(long spinMarginNs) {
+        if (spinMarginNs < 0) {
+            throw new IllegalArgumentException("Spin margin must not be negative");
+        }
+        return new ReleaseTimer(Mode.PARK_SPIN, spinMarginNs);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getSpinMarginNs() {
+        return spinMarginNs;
+    }
+
+    // Block until releaseNs, throws InterruptedException like Thread.sleep
+    public void waitUntil(long releaseNs) throws InterruptedException {
+        long remaining = releaseNs - System.nanoTime();
+        if (remaining <= 0) return;
+
+        if (mode == Mode.SLEEP) {
+            Thread.sleep(remaining / 1_000_000, (int)(remaining % 1_000_000));
+            return;
+        }
+
+        // 1. coarse wait, parkNanos may return early (spurious wake-up or interrupt)
+        while ((remaining = releaseNs - System.nanoTime()) > spinMarginNs) {
+            LockSupport.parkNanos(remaining - spinMarginNs);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+
+        // 2. spin to the exact release instant
+        while (releaseNs - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+}
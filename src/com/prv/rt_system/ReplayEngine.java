@@ -0,0 +1,300 @@
+package com.prv.rt_system;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import com.prv.rt_system.ADC.ADCStatus;
+import com.prv.rt_system.ControlSystem.AlarmType;
+import com.prv.rt_system.ControlSystem.ControlInput;
+
+// Re-runs the control logic against a BinaryRecorder recording.
+// Recorded sensor periods are fed straight into the sensor pipeline (no environment, no ADC
+// delays, no filters since recorded values are filtered already), recorded external inputs are
+// applied at their recorded time and the pump tasks are ticked every pump period of recorded
+// time. Pacing follows the recorded simulation time at 1x, Nx or without any waiting
+// (speed <= 0). The alarm transitions and pump state changes produced by the current logic are
+// then matched against the recorded ones. Every session of the recording (see RecordingReader)
+// is replayed on a fresh control system and matched on its own.
+public class ReplayEngine {
+
+    public static final double MAX_SPEED = 0;
+    public static final float DEFAULT_TOLERANCE_MS = 2 * ControlSystem.READER_TASK_PERIOD_MS;
+
+    private static final ADCStatus[] ADC_STATUSES = ADCStatus.values();
+    private static final ControlInput[] INPUTS = ControlInput.values();
+    private static final AlarmType[] ALARM_TYPES = AlarmType.values();
+
+    // Alarm transition or pump state change
+    public static final class Decision {
+        public final ControlEvent.Type type;   // ALARM or PUMP_COMMAND
+        public final int alarmId;
+        public final boolean on;               // alarm raised / pump on
+        public final float simTimeMs;
+        public final int session;
+
+        Decision(ControlEvent.Type type, int alarmId, boolean on, float simTimeMs, int session) {
+            this.type = type;
+            this.alarmId = alarmId;
+            this.on = on;
+            this.simTimeMs = simTimeMs;
+            this.session = session;
+        }
+
+        boolean sameAs(Decision other) {
+            return type == other.type && alarmId == other.alarmId && on == other.on;
+        }
+
+        @Override
+        public String toString() {
+            String what = type == ControlEvent.Type.ALARM
+                    ? (on ? "ALARM RAISED " : "ALARM CLEARED ") + ALARM_TYPES[alarmId]
+                    : (on ? "PUMP ON" : "PUMP OFF");
+            return String.format("session %d t: %8.2f s - %s", session, simTimeMs / 1000, what);
+        }
+    }
+
+    public static class Result {
+        public final List<Decision> recorded = new ArrayList<>();
+        public final List<Decision> produced = new ArrayList<>();
+        public final List<Decision> missing = new ArrayList<>(); // recorded, not produced
+        public final List<Decision> extra = new ArrayList<>();   // produced, not recorded
+        public int sessions = 0;
+        public long records = 0;
+        public long sensorPeriods = 0;
+        public float recordedSpanMs = 0;
+        public double wallTimeMs = 0;
+        public float maxShiftMs = 0;
+
+        public boolean matches() {
+            return missing.isEmpty() && extra.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Replayed %d records in %d session(s), %d sensor periods, %.1f s of recorded time in %.1f ms (%.0fx)%n",
+                    records, sessions, sensorPeriods, recordedSpanMs / 1000, wallTimeMs,
+                    wallTimeMs > 0 ? recordedSpanMs / wallTimeMs : 0.0));
+            sb.append(String.format("Decisions: %d recorded, %d produced, %d missing, %d extra, max shift %.1f ms -> %s%n",
+                    recorded.size(), produced.size(), missing.size(), extra.size(), maxShiftMs,
+                    matches() ? "MATCH" : "DIFF"));
+            for (Decision d : missing) sb.append("  - ").append(d).append(System.lineSeparator());
+            for (Decision d : extra) sb.append("  + ").append(d).append(System.lineSeparator());
+            return sb.toString();
+        }
+
+        private void add(Result session) {
+            sessions++;
+            recorded.addAll(session.recorded);
+            produced.addAll(session.produced);
+            missing.addAll(session.missing);
+            extra.addAll(session.extra);
+            records += session.records;
+            sensorPeriods += session.sensorPeriods;
+            recordedSpanMs += session.recordedSpanMs;
+            maxShiftMs = Math.max(maxShiftMs, session.maxShiftMs);
+        }
+    }
+
+    private final File recording;
+    private final String prefix;
+    private final double speed;
+    private final MCU mcu;
+    private float toleranceMs = DEFAULT_TOLERANCE_MS;
+
+    // recorded time the control logic currently runs at
+    private volatile float simTimeMs = 0;
+
+    // speed 1 = recorded pace, N = N times faster, <= 0 = as fast as possible
+    public ReplayEngine(File recording, double speed) {
+        this(recording, "session", speed, new MCU());
+    }
+
+    // recording prefix names the section, mcu declares the channels the recording was made with
+    public ReplayEngine(File recording, String prefix, double speed, MCU mcu) {
+        this.recording = recording;
+        this.prefix = prefix;
+        this.speed = speed;
+        this.mcu = mcu;
+    }
+
+    // maximal time shift between a recorded and a produced decision that still counts as a match
+    public void setToleranceMs(float toleranceMs) {
+        this.toleranceMs = toleranceMs;
+    }
+
+    public Result run() throws IOException {
+        Result result = new Result();
+        long wallStart = System.nanoTime();
+        try (RecordingReader reader = new RecordingReader(recording, prefix)) {
+            boolean more = reader.next();
+            while (more) {
+                Result session = new Result();
+                more = replaySession(reader, session);
+                result.add(session);
+            }
+        }
+        result.wallTimeMs = (System.nanoTime() - wallStart) / 1e6;
+        return result;
+    }
+
+    // Replay the session starting at the reader's current record, returns false at the end of
+    // the recording, true if the reader stopped at the first record of the next session
+    private boolean replaySession(RecordingReader reader, Result result) throws IOException {
+        int session = reader.session;
+        boolean[] pumpOn = new boolean[2]; // [0] recorded, [1] produced
+
+        ControlSystem controlSystem = new ControlSystem(mcu, () -> simTimeMs, null);
+        controlSystem.getAlarmState().addListener((alarmId, raised, timestampNs) ->
+                result.produced.add(new Decision(ControlEvent.Type.ALARM, alarmId, raised, simTimeMs, session)));
+        controlSystem.setPumpActuator(on -> {
+            if (on != pumpOn[1]) {
+                pumpOn[1] = on;
+                result.produced.add(new Decision(ControlEvent.Type.PUMP_COMMAND, 0, on, simTimeMs, session));
+            }
+        });
+        controlSystem.prepareReplay();
+
+        int channelCount = controlSystem.getSensorChannelCount();
+        ADCStatus[] statuses = new ADCStatus[channelCount];
+        float[] values = new float[channelCount];
+        Arrays.fill(statuses, ADCStatus.DATA_NOT_READY);
+
+        long wallStart = System.nanoTime();
+        float firstTime = reader.simTimeMs;
+        float nextPumpPeriod = firstTime;
+        int lastChannel = -1;       // last channel of the sensor period being collected
+        float periodTime = 0;
+        boolean more;
+
+        try {
+            do {
+                result.records++;
+                float t = reader.simTimeMs;
+
+                // the pipeline publishes one sample per channel in channel order every period
+                if (reader.type == ControlEvent.Type.SAMPLE && reader.channelId <= lastChannel) {
+                    runSensorPeriod(controlSystem, statuses, values, periodTime, wallStart, firstTime);
+                    result.sensorPeriods++;
+                    lastChannel = -1;
+                }
+                while (nextPumpPeriod <= t) {
+                    pace(nextPumpPeriod, wallStart, firstTime);
+                    controlSystem.replayPumpPeriod();
+                    nextPumpPeriod += PumpControlSubSys.TASK_PERIOD_MS;
+                }
+
+                switch (reader.type) {
+                case SAMPLE:
+                    if (reader.channelId >= channelCount) {
+                        throw new IOException("Recording has channel " + reader.channelId + " but only "
+                                + channelCount + " channels are declared");
+                    }
+                    statuses[reader.channelId] = ADC_STATUSES[reader.status];
+                    values[reader.channelId] = reader.value;
+                    lastChannel = reader.channelId;
+                    periodTime = t;
+                    if (lastChannel == channelCount - 1) {
+                        runSensorPeriod(controlSystem, statuses, values, periodTime, wallStart, firstTime);
+                        result.sensorPeriods++;
+                        lastChannel = -1;
+                    }
+                    break;
+                case INPUT:
+                    pace(t, wallStart, firstTime);
+                    applyInput(controlSystem, INPUTS[reader.channelId]);
+                    break;
+                case ALARM:
+                    result.recorded.add(new Decision(ControlEvent.Type.ALARM, reader.channelId, reader.flag, t, session));
+                    break;
+                case PUMP_COMMAND:
+                    if (reader.flag != pumpOn[0]) {
+                        pumpOn[0] = reader.flag;
+                        result.recorded.add(new Decision(ControlEvent.Type.PUMP_COMMAND, 0, reader.flag, t, session));
+                    }
+                    break;
+                case LOG:
+                default:
+                    break;
+                }
+                result.recordedSpanMs = t - firstTime;
+            } while ((more = reader.next()) && !reader.sessionStart);
+
+            if (lastChannel >= 0) {
+                runSensorPeriod(controlSystem, statuses, values, periodTime, wallStart, firstTime);
+                result.sensorPeriods++;
+            }
+        } finally {
+            controlSystem.getEventBus().shutdown();
+        }
+
+        diff(result);
+        return more;
+    }
+
+    private void runSensorPeriod(ControlSystem controlSystem, ADCStatus[] statuses, float[] values,
+            float t, long wallStart, float firstTime) {
+        pace(t, wallStart, firstTime);
+        controlSystem.replaySensorPeriod(statuses, values, t);
+    }
+
+    private static void applyInput(ControlSystem controlSystem, ControlInput input) {
+        switch (input) {
+        case WATER_LEVEL_HIGH:
+            controlSystem.EXTIWaterLevelHigh();
+            break;
+        case WATER_LEVEL_LOW:
+            controlSystem.EXTIWaterLevelLow();
+            break;
+        case OPERATOR_PUMP_ON:
+            controlSystem.pumpManualControlSignal(true);
+            break;
+        case OPERATOR_PUMP_OFF:
+            controlSystem.pumpManualControlSignal(false);
+            break;
+        }
+    }
+
+    // Move replay time to t, waiting for the matching wall clock instant unless running at max speed
+    private void pace(float t, long wallStart, float firstTime) {
+        simTimeMs = t;
+        if (speed <= 0) return;
+
+        long due = wallStart + (long) ((t - firstTime) * 1_000_000L / speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    // Match every recorded decision with the first unmatched produced one of the same kind
+    // within the tolerance, both lists are in time order
+    private void diff(Result result) {
+        List<Decision> produced = result.produced;
+        boolean[] matched = new boolean[produced.size()];
+        int from = 0;
+
+        for (Decision rec : result.recorded) {
+            while (from < produced.size() && (matched[from] || produced.get(from).simTimeMs < rec.simTimeMs - toleranceMs)) {
+                from++;
+            }
+            boolean found = false;
+            for (int i = from; i < produced.size() && produced.get(i).simTimeMs <= rec.simTimeMs + toleranceMs; i++) {
+                if (!matched[i] && produced.get(i).sameAs(rec)) {
+                    matched[i] = true;
+                    found = true;
+                    result.maxShiftMs = Math.max(result.maxShiftMs, Math.abs(produced.get(i).simTimeMs - rec.simTimeMs));
+                    break;
+                }
+            }
+            if (!found) result.missing.add(rec);
+        }
+        for (int i = 0; i < produced.size(); i++) {
+            if (!matched[i]) result.extra.add(produced.get(i));
+        }
+    }
+}
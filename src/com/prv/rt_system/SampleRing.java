@@ -0,0 +1,93 @@
+package com.prv.rt_system;
+
+import java.lang.invoke.VarHandle;
+
+// DMA style ring buffer of (value, timestamp) samples written by one producer.
+// Samples live in preallocated primitive arrays, readers drain batches by sequence number
+// without locks; a reader that falls more than one capacity behind loses the oldest samples.
+public class SampleRing {
+
+    // Per reader position in the sample sequence
+    public static class Reader {
+        private long nextSeq;
+        private long lostSamples = 0;
+
+        private Reader(long nextSeq) {
+            this.nextSeq = nextSeq;
+        }
+
+        public long getLostSamples() {
+            return lostSamples;
+        }
+    }
+
+    private final float[] values;
+    private final long[] timestamps;
+    private final int mask;
+
+    // number of samples published so far, written only by the producer
+    private volatile long published = 0;
+
+    public SampleRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        values = new float[capacity];
+        timestamps = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    // Reader starting at the next published sample
+    public Reader newReader() {
+        return new Reader(published);
+    }
+
+    // Producer side, single thread only
+    public void publish(float value, long timestampNs) {
+        long seq = published;
+        int idx = (int) (seq & mask);
+        values[idx] = value;
+        timestamps[idx] = timestampNs;
+        published = seq + 1; // volatile write makes the sample visible to readers
+    }
+
+    // Copy all samples published since the reader's last drain (at most out array length)
+    // Returns the number of copied samples
+    public int drain(Reader reader, float[] outValues, long[] outTimestamps) {
+        long head = published;
+        long from = reader.nextSeq;
+
+        // producer lapped the reader, oldest samples are gone
+        if (head - from > values.length) {
+            reader.lostSamples += head - values.length - from;
+            from = head - values.length;
+        }
+
+        int count = (int) Math.min(head - from, Math.min(outValues.length, outTimestamps.length));
+        for (int i = 0; i < count; i++) {
+            int idx = (int) ((from + i) & mask);
+            outValues[i] = values[idx];
+            outTimestamps[i] = timestamps[idx];
+        }
+
+        // samples the producer may have overwritten while copying are dropped from the front
+        // (the slot of the sample being written is the one of published - capacity)
+        VarHandle.loadLoadFence();
+        long overwritten = published - values.length - from + 1;
+        if (overwritten > 0) {
+            int drop = (int) Math.min(overwritten, count);
+            System.arraycopy(outValues, drop, outValues, 0, count - drop);
+            System.arraycopy(outTimestamps, drop, outTimestamps, 0, count - drop);
+            reader.lostSamples += drop;
+            count -= drop;
+            from += drop;
+        }
+
+        reader.nextSeq = from + count;
+        return count;
+    }
+}
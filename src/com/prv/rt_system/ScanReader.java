@@ -0,0 +1,63 @@
+package com.prv.rt_system;
+
+import com.prv.rt_system.ADC.ADCStatus;
+
+// Reader task side of an ADC in scan mode: drains every sample taken since the previous period
+class ScanReader {
+    private final ADC adc;
+    private final SampleRing ring;
+    private final SampleRing.Reader reader;
+
+    // last drained batch
+    private final float[] values;
+    private final long[] timestamps;
+    private int count = 0;
+
+    ScanReader(ADC adc) {
+        this.adc = adc;
+        this.ring = adc.getSampleRing();
+        this.reader = ring.newReader();
+        this.values = new float[ring.capacity()];
+        this.timestamps = new long[ring.capacity()];
+    }
+
+    // Drain new samples, DATA_READY if the batch is not empty
+    ADCStatus poll() {
+        count = ring.drain(reader, values, timestamps);
+        if (count > 0) return ADCStatus.DATA_READY;
+
+        return adc.getStatus() == ADCStatus.FAILED_CONVERSION ? ADCStatus.FAILED_CONVERSION : ADCStatus.DATA_NOT_READY;
+    }
+
+    int count() {
+        return count;
+    }
+
+    float value(int i) {
+        return values[i];
+    }
+
+    long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    float last() {
+        return values[count - 1];
+    }
+
+    float max() {
+        float max = values[0];
+        for (int i = 1; i < count; i++) max = Math.max(max, values[i]);
+        return max;
+    }
+
+    float min() {
+        float min = values[0];
+        for (int i = 1; i < count; i++) min = Math.min(min, values[i]);
+        return min;
+    }
+
+    long lostSamples() {
+        return reader.getLostSamples();
+    }
+}
@@ -0,0 +1,248 @@
+package com.prv.rt_system;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Schedulability tests for the periodic task set (implicit deadlines, D = T).
+// Runs the Liu & Layland and hyperbolic utilization bounds and the exact response-time
+// analysis for fixed priorities. When jobs are dispatched non-preemptively (TaskDispatcher)
+// every task can additionally be blocked by the longest lower priority job. The tests are for a
+// single processor: with a dispatcher of several workers the report says so, it does not account
+// for the jobs running in parallel.
+public class SchedulabilityAnalysis {
+
+    public enum Ordering {
+        DECLARED_PRIORITY,  // thread priorities as given to PeriodicTask
+        RATE_MONOTONIC,     // shorter period -> higher priority
+        EDF                 // utilization test only, no per-task response times
+    }
+
+    public static class TaskSpec {
+        public final String name;
+        public final double periodMs;
+        public final double wcetMs;
+        public final int priority;
+
+        public TaskSpec(String name, double periodMs, double wcetMs, int priority) {
+            this.name = name;
+            this.periodMs = periodMs;
+            this.wcetMs = wcetMs;
+            this.priority = priority;
+        }
+
+        TaskSpec scaled(double factor) {
+            return new TaskSpec(name, periodMs, wcetMs * factor, priority);
+        }
+    }
+
+    public static class Report {
+        public final List<TaskSpec> tasks;
+        public final double utilization;
+        public final double liuLaylandBound;
+        public final boolean hyperbolicBoundHolds;
+        public final double[] responseTimeMs; // NaN when not computed (EDF) or diverging
+        public final boolean schedulable;
+        public final double headroom;         // factor by which all WCETs can grow
+        public final int workers;             // of the dispatcher, the tests assume one
+
+        Report(List<TaskSpec> tasks, double utilization, double liuLaylandBound, boolean hyperbolicBoundHolds,
+                double[] responseTimeMs, boolean schedulable, double headroom, int workers) {
+            this.tasks = tasks;
+            this.utilization = utilization;
+            this.liuLaylandBound = liuLaylandBound;
+            this.hyperbolicBoundHolds = hyperbolicBoundHolds;
+            this.responseTimeMs = responseTimeMs;
+            this.schedulable = schedulable;
+            this.headroom = headroom;
+            this.workers = workers;
+        }
+
+        public double getSlackMs(int i) {
+            return tasks.get(i).periodMs - responseTimeMs[i];
+        }
+
+        // Short one line summary, suitable for the GUI log
+        public String getSummary() {
+            return String.format("U=%.4f (LL bound %.4f, hyperbolic %s) -> %s, WCET headroom x%.1f%s",
+                    utilization, liuLaylandBound, hyperbolicBoundHolds ? "ok" : "exceeded",
+                    schedulable ? "SCHEDULABLE" : "NOT SCHEDULABLE", headroom,
+                    workers > 1 ? " (single worker analysis, the dispatcher runs " + workers + " workers)" : "");
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(getSummary()).append('\n');
+            sb.append(String.format("%-18s %8s %8s %4s %10s %10s%n", "task", "T[ms]", "C[ms]", "prio", "R[ms]", "slack[ms]"));
+            for (int i = 0; i < tasks.size(); i++) {
+                TaskSpec t = tasks.get(i);
+                sb.append(String.format("%-18s %8.1f %8.3f %4d %10.3f %10.3f%n",
+                        t.name, t.periodMs, t.wcetMs, t.priority, responseTimeMs[i], getSlackMs(i)));
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final double MAX_HEADROOM = 1000.0;
+
+    private final Ordering ordering;
+    private final boolean nonPreemptive;
+    private final int workers; // only reported, see the class comment
+
+    public SchedulabilityAnalysis(Ordering ordering, boolean nonPreemptive) {
+        this(ordering, nonPreemptive, 1);
+    }
+
+    public SchedulabilityAnalysis(Ordering ordering, boolean nonPreemptive, int workers) {
+        this.ordering = ordering;
+        this.nonPreemptive = nonPreemptive;
+        this.workers = workers;
+    }
+
+    // Analysis matching the way tasks are actually run (own threads or dispatcher)
+    public static SchedulabilityAnalysis forDispatcher(TaskDispatcher dispatcher) {
+        if (dispatcher == null) {
+            return new SchedulabilityAnalysis(Ordering.DECLARED_PRIORITY, false);
+        }
+        int workers = dispatcher.getWorkerCount();
+        switch (dispatcher.getPolicy()) {
+        case EDF:
+            return new SchedulabilityAnalysis(Ordering.EDF, true, workers);
+        case RATE_MONOTONIC:
+            return new SchedulabilityAnalysis(Ordering.RATE_MONOTONIC, true, workers);
+        case FIXED_PRIORITY:
+        default:
+            return new SchedulabilityAnalysis(Ordering.DECLARED_PRIORITY, true, workers);
+        }
+    }
+
+    // Analyse the tasks as they are run (own threads or dispatcher), with configured budgets
+    // (measured = false) or with measured WCETs (measured = true)
+    public static Report analyseTasks(List<PeriodicTask> tasks, boolean measured, TaskDispatcher dispatcher) {
+        List<TaskSpec> specs = new ArrayList<>(tasks.size());
+        for (PeriodicTask task : tasks) {
+            specs.add(measured ? measuredOf(task) : budgetOf(task));
+        }
+        return forDispatcher(dispatcher).analyse(specs);
+    }
+
+    // Task spec from the configured WCET budget (startup analysis)
+    public static TaskSpec budgetOf(PeriodicTask task) {
+        return new TaskSpec(task.getName(), task.getPeriodNs() / 1_000_000.0, task.getWcetBudgetMs(), task.getPriority());
+    }
+
+    // Task spec from the measured worst case execution time (live analysis)
+    public static TaskSpec measuredOf(PeriodicTask task) {
+        return new TaskSpec(task.getName(), task.getPeriodNs() / 1_000_000.0, task.getMaxExecTimeMs(), task.getPriority());
+    }
+
+    public Report analyse(List<TaskSpec> taskSet) {
+        List<TaskSpec> tasks = new ArrayList<>(taskSet);
+        tasks.sort(priorityOrder());
+
+        int n = tasks.size();
+        double u = utilization(tasks);
+        double llBound = n == 0 ? 1.0 : n * (Math.pow(2.0, 1.0 / n) - 1.0);
+
+        double hyperbolic = 1.0;
+        for (TaskSpec t : tasks) {
+            hyperbolic *= t.wcetMs / t.periodMs + 1.0;
+        }
+
+        double[] response = new double[n];
+        boolean schedulable = isSchedulable(tasks, response);
+
+        return new Report(tasks, u, llBound, hyperbolic <= 2.0, response, schedulable, headroom(tasks), workers);
+    }
+
+    // Largest factor all WCETs can be multiplied with while the set stays schedulable
+    private double headroom(List<TaskSpec> tasks) {
+        double[] scratch = new double[tasks.size()];
+        if (!isSchedulable(tasks, scratch)) return 0;
+
+        double low = 1.0;
+        double high = MAX_HEADROOM;
+        if (isSchedulable(scale(tasks, high), scratch)) return high;
+
+        // binary search on the scaling factor
+        while (high - low > 0.01) {
+            double mid = (low + high) / 2;
+            if (isSchedulable(scale(tasks, mid), scratch)) low = mid;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private boolean isSchedulable(List<TaskSpec> tasks, double[] response) {
+        if (ordering == Ordering.EDF) {
+            Arrays.fill(response, Double.NaN);
+            // density test with blocking by one non-preemptive job
+            double blocking = nonPreemptive ? maxWcet(tasks) : 0;
+            double minPeriod = Double.MAX_VALUE;
+            for (TaskSpec t : tasks) minPeriod = Math.min(minPeriod, t.periodMs);
+            return utilization(tasks) + (tasks.isEmpty() ? 0 : blocking / minPeriod) <= 1.0;
+        }
+
+        boolean schedulable = true;
+        for (int i = 0; i < tasks.size(); i++) {
+            response[i] = responseTime(tasks, i);
+            if (!(response[i] <= tasks.get(i).periodMs)) schedulable = false;
+        }
+        return schedulable;
+    }
+
+    // Exact response time: R = B + C + sum over higher priority j of ceil(R / Tj) * Cj
+    private double responseTime(List<TaskSpec> tasks, int i) {
+        TaskSpec task = tasks.get(i);
+        Comparator<TaskSpec> order = priorityOrder();
+
+        double blocking = 0;
+        if (nonPreemptive) {
+            for (TaskSpec other : tasks) {
+                if (other != task && order.compare(other, task) > 0) blocking = Math.max(blocking, other.wcetMs);
+            }
+        }
+
+        double r = blocking + task.wcetMs;
+        while (true) {
+            double next = blocking + task.wcetMs;
+            for (TaskSpec other : tasks) {
+                // equal priority tasks are counted as interference (pessimistic)
+                if (other != task && order.compare(other, task) <= 0) {
+                    next += Math.ceil(r / other.periodMs) * other.wcetMs;
+                }
+            }
+
+            if (next > task.periodMs) return next; // deadline already missed, stop iterating
+            if (next == r) return r;
+            r = next;
+        }
+    }
+
+    private Comparator<TaskSpec> priorityOrder() {
+        Comparator<TaskSpec> byPeriod = Comparator.comparingDouble(t -> t.periodMs);
+        Comparator<TaskSpec> byPriority = Comparator.comparingInt((TaskSpec t) -> t.priority).reversed();
+        if (ordering == Ordering.DECLARED_PRIORITY) return byPriority;
+        return byPeriod.thenComparing(byPriority);
+    }
+
+    private static double utilization(List<TaskSpec> tasks) {
+        double u = 0;
+        for (TaskSpec t : tasks) u += t.wcetMs / t.periodMs;
+        return u;
+    }
+
+    private static double maxWcet(List<TaskSpec> tasks) {
+        double max = 0;
+        for (TaskSpec t : tasks) max = Math.max(max, t.wcetMs);
+        return max;
+    }
+
+    private static List<TaskSpec> scale(List<TaskSpec> tasks, double factor) {
+        List<TaskSpec> scaled = new ArrayList<>(tasks.size());
+        for (TaskSpec t : tasks) scaled.add(t.scaled(factor));
+        return scaled;
+    }
+}
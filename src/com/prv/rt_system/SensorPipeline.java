@@ -0,0 +1,255 @@
+package com.prv.rt_system;
+
+import java.util.Arrays;
+
+import com.prv.rt_system.ADC.ADCStatus;
+import com.prv.rt_system.ControlSystem.AlarmType;
+
+// Table driven sensor processing: every MCU channel is read, filtered, fault checked and limit
+// checked in one pass per period. Per channel state is kept in parallel primitive arrays.
+// Channels with a rate of change filter keep their level for the limits and the control values,
+// their rate is published separately and checked against its own limit.
+// Alarms are shared by all channels of the same type, so votes are collected per alarm during
+// the pass and applied once at the end: any channel raising wins, otherwise a channel that is
+// waiting for a second strike keeps the alarm as it is, otherwise the alarm is cleared.
+class SensorPipeline {
+
+    // per alarm votes, the strongest vote of a pass wins
+    private static final byte VOTE_NONE = 0;
+    private static final byte VOTE_CLEAR = 1;
+    private static final byte VOTE_HOLD = 2;
+    private static final byte VOTE_RAISE = 3;
+
+    private static final AlarmType[] ALARMS = AlarmType.values();
+    private static final ChannelType[] TYPES = ChannelType.values();
+
+    private final ControlSystem controlSystem;
+    private final EventBus events;
+    private final SimClock clock;
+    private final boolean scanMode;
+
+    // channel table (struct of arrays), index = MCU channel id
+    private final int channelCount;
+    private final ADC[] adcs;
+    private final ChannelType[] types;
+    private final boolean[] prevReady;
+    private final float[] lastValue;
+    private final float[] lastRate;
+    private final float[] lowLimit;
+    private final float[] highLimit;
+    private final AlarmType[] faultAlarm;
+    private final AlarmType[] limitAlarm; // null if the channel has no limits
+    private final ScanReader[] scans;     // null in single shot mode
+    private final SignalFilterBank filters;
+
+    private final byte[] alarmVotes = new byte[ALARMS.length];
+
+    // latest value per channel type: worst case over channels (max for gases, min for air flow),
+    // first channel for water flow
+    private final float[] typeValues = new float[TYPES.length];
+    private final boolean[] typeSeen = new boolean[TYPES.length];
+
+    SensorPipeline(ControlSystem controlSystem, MCU mcu, boolean scanMode) {
+        this.controlSystem = controlSystem;
+        this.events = controlSystem.getEventBus();
+        this.clock = controlSystem.getClock();
+        this.scanMode = scanMode;
+
+        channelCount = mcu.getChannelCount();
+        adcs = new ADC[channelCount];
+        types = new ChannelType[channelCount];
+        prevReady = new boolean[channelCount];
+        lastValue = new float[channelCount];
+        lastRate = new float[channelCount];
+        lowLimit = new float[channelCount];
+        highLimit = new float[channelCount];
+        faultAlarm = new AlarmType[channelCount];
+        limitAlarm = new AlarmType[channelCount];
+        scans = scanMode ? new ScanReader[channelCount] : null;
+        filters = new SignalFilterBank(channelCount);
+
+        for (int ch = 0; ch < channelCount; ch++) {
+            adcs[ch] = mcu.adcOf(ch);
+            types[ch] = mcu.getChannelType(ch);
+            prevReady[ch] = true;
+            lowLimit[ch] = mcu.getLowLimit(ch);
+            highLimit[ch] = mcu.getHighLimit(ch);
+            faultAlarm[ch] = faultAlarmOf(types[ch]);
+            limitAlarm[ch] = limitAlarmOf(types[ch]);
+            filters.configure(ch, mcu.getFilterSpec(ch));
+            if (scanMode) scans[ch] = new ScanReader(adcs[ch]);
+        }
+    }
+
+    int getChannelCount() {
+        return channelCount;
+    }
+
+    // Kick off the first single shot conversions (nothing to do in scan mode)
+    void start() {
+        if (scanMode) return;
+        for (int ch = 0; ch < channelCount; ch++) {
+            adcs[ch].startConversion();
+        }
+    }
+
+    float getTypeValue(ChannelType type) {
+        return typeValues[type.ordinal()];
+    }
+
+    float getChannelValue(int channelId) {
+        return lastValue[channelId];
+    }
+
+    // One pass over all channels, called once per reader period
+    void processPeriod() {
+        for (int ch = 0; ch < channelCount; ch++) {
+            processChannel(ch);
+        }
+        applyAlarmVotes();
+        aggregateTypeValues();
+    }
+
+    // Recorded period (replay), statuses and values indexed by channel id. Recorded values are
+    // already filtered, so neither the ADCs nor the filters are used, except that rates of change
+    // are derived again from the recorded levels
+    void processRecordedPeriod(ADCStatus[] statuses, float[] values, long timestampNs) {
+        for (int ch = 0; ch < channelCount; ch++) {
+            if (filters.hasRate(ch) && statuses[ch] == ADCStatus.DATA_READY) {
+                filters.apply(ch, values[ch], timestampNs);
+                lastRate[ch] = filters.getRate(ch);
+            }
+            evaluateChannel(ch, statuses[ch], values[ch]);
+        }
+        applyAlarmVotes();
+        aggregateTypeValues();
+    }
+
+    private void processChannel(int ch) {
+        ADC adc = adcs[ch];
+        ADCStatus status = scanMode ? scans[ch].poll() : adc.getStatus();
+
+        float value = 0;
+        if (status == ADCStatus.DATA_READY) {
+            value = scanMode ? filterBatch(ch) : filters.apply(ch, adc.getValue(), clock.nanoTime());
+            if (!scanMode) lastRate[ch] = filters.getRate(ch);
+        }
+        evaluateChannel(ch, status, value);
+
+        // period displacement
+        if (!scanMode) adc.startConversion();
+    }
+
+    // Fault and limit votes for one channel, value is the filtered sample (ignored if not ready)
+    private void evaluateChannel(int ch, ADCStatus status, float value) {
+        if (status != ADCStatus.DATA_READY) {
+            // two malfunctions in a row -> sound an alarm
+            vote(faultAlarm[ch], prevReady[ch] ? VOTE_HOLD : VOTE_RAISE);
+            if (limitAlarm[ch] != null) vote(limitAlarm[ch], VOTE_HOLD);
+            prevReady[ch] = false;
+        } else {
+            vote(faultAlarm[ch], VOTE_CLEAR);
+            prevReady[ch] = true;
+            lastValue[ch] = value;
+
+            if (limitAlarm[ch] != null) {
+                boolean exceeded = value > highLimit[ch] || value < lowLimit[ch];
+                vote(limitAlarm[ch], exceeded ? VOTE_RAISE : VOTE_CLEAR);
+            }
+        }
+
+        events.publishSample(ch, lastValue[ch], status.ordinal());
+        if (filters.hasRate(ch)) evaluateRate(ch, status);
+    }
+
+    // Rate limit vote and rate sample of a rate of change filtered channel
+    private void evaluateRate(int ch, ADCStatus status) {
+        float limit = filters.getRateLimit(ch);
+        if (limit > 0) {
+            if (status != ADCStatus.DATA_READY) {
+                vote(AlarmType.RATE_OF_CHANGE_TOO_HIGH, VOTE_HOLD);
+            } else {
+                vote(AlarmType.RATE_OF_CHANGE_TOO_HIGH, Math.abs(lastRate[ch]) > limit ? VOTE_RAISE : VOTE_CLEAR);
+            }
+        }
+        events.publishRate(ch, lastRate[ch]);
+    }
+
+    // Filter every sample of the scanned batch, returns the filtered value closest to violating
+    // the channel limits (last one if the channel has no limits), keeps the steepest rate
+    private float filterBatch(int ch) {
+        ScanReader scan = scans[ch];
+        boolean high = highLimit[ch] != MCU.NO_HIGH_LIMIT;
+        boolean low = lowLimit[ch] != MCU.NO_LOW_LIMIT;
+
+        float worst = 0;
+        float steepest = 0;
+        for (int i = 0; i < scan.count(); i++) {
+            float v = filters.apply(ch, scan.value(i), scan.timestamp(i));
+            if (i == 0 || (high ? v > worst : low ? v < worst : true)) worst = v;
+            float rate = filters.getRate(ch);
+            if (i == 0 || Math.abs(rate) > Math.abs(steepest)) steepest = rate;
+        }
+        lastRate[ch] = steepest;
+        return worst;
+    }
+
+    private void vote(AlarmType alarm, byte vote) {
+        int idx = alarm.ordinal();
+        if (vote > alarmVotes[idx]) alarmVotes[idx] = vote;
+    }
+
+    private void applyAlarmVotes() {
+        for (int i = 0; i < alarmVotes.length; i++) {
+            if (alarmVotes[i] == VOTE_RAISE) controlSystem.soundAnAlarm(ALARMS[i]);
+            else if (alarmVotes[i] == VOTE_CLEAR) controlSystem.clearAlarm(ALARMS[i]);
+            alarmVotes[i] = VOTE_NONE;
+        }
+    }
+
+    private void aggregateTypeValues() {
+        Arrays.fill(typeSeen, false);
+        for (int ch = 0; ch < channelCount; ch++) {
+            ChannelType type = types[ch];
+            int t = type.ordinal();
+            float v = lastValue[ch];
+
+            if (!typeSeen[t]) {
+                typeValues[t] = v;
+                typeSeen[t] = true;
+            } else if (type == ChannelType.CO || type == ChannelType.CH4) {
+                typeValues[t] = Math.max(typeValues[t], v);
+            } else if (type == ChannelType.AIR_FLOW) {
+                typeValues[t] = Math.min(typeValues[t], v);
+            }
+        }
+    }
+
+    private static AlarmType faultAlarmOf(ChannelType type) {
+        switch (type) {
+        case CO:
+            return AlarmType.CO_SENSOR_FAULT;
+        case CH4:
+            return AlarmType.CH4_SENSOR_FAULT;
+        case AIR_FLOW:
+            return AlarmType.AIR_FLOW_SENSOR_FAULT;
+        case WATER_FLOW:
+        default:
+            return AlarmType.WATER_FLOW_SENSOR_FAULT;
+        }
+    }
+
+    private static AlarmType limitAlarmOf(ChannelType type) {
+        switch (type) {
+        case CO:
+            return AlarmType.CO_CONCENTRATION_TOO_HIGH;
+        case CH4:
+            return AlarmType.CH4_CONCENTRATION_TOO_HIGH;
+        case AIR_FLOW:
+            return AlarmType.AIR_FLOW_TOO_LOW;
+        case WATER_FLOW:
+        default:
+            return null;
+        }
+    }
+}
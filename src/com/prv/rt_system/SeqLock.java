@@ -0,0 +1,53 @@
+package com.prv.rt_system;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sequence lock guarding a small group of plain fields, for consistent snapshots without locks.
+// A writer makes the sequence odd, stores the fields and makes it even again, it never waits for
+// readers. A reader notes the sequence, copies the fields and retries if the sequence was odd or
+// changed meanwhile, so every copy it keeps holds the values of one completed write.
+// Writers from several threads are serialized by a CAS on the sequence.
+//
+//   int seq;
+//   do {
+//       seq = lock.readBegin();
+//       ... copy the fields ...
+//   } while (lock.readRetry(seq));
+public final class SeqLock {
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public void writeBegin() {
+        while (true) {
+            int seq = sequence.get();
+            // the CAS keeps the following field stores behind the odd sequence
+            if ((seq & 1) == 0 && sequence.compareAndSet(seq, seq + 1)) return;
+            Thread.onSpinWait();
+        }
+    }
+
+    public void writeEnd() {
+        sequence.incrementAndGet();
+    }
+
+    // Sequence to validate the copy with, waits out a write in progress
+    public int readBegin() {
+        int seq;
+        while (((seq = sequence.get()) & 1) != 0) {
+            Thread.onSpinWait();
+        }
+        return seq;
+    }
+
+    // true if the fields copied since readBegin may be inconsistent
+    public boolean readRetry(int seq) {
+        VarHandle.loadLoadFence(); // field loads stay before the sequence check
+        return sequence.get() != seq;
+    }
+
+    // number of completed writes
+    public int getWriteCount() {
+        return sequence.get() >>> 1;
+    }
+}
@@ -0,0 +1,203 @@
+package com.prv.rt_system;
+
+import java.util.Arrays;
+
+// Incremental per channel signal filters applied before threshold checks.
+// State of all channels lives in flat primitive arrays (window storage is channel * MAX_WINDOW),
+// every update is constant time for a given window and never allocates:
+//  EWMA            y = y + alpha * (x - y)
+//  MOVING_AVERAGE  running sum over the last N samples
+//  MEDIAN          sorted copy of the last N samples, updated by binary search + shift
+//  RATE_OF_CHANGE  level passes unchanged, (x - previous x) / dt in units per second is kept
+//                  as the channel's rate (see getRate) with its own limit
+public class SignalFilterBank {
+
+    public enum FilterType {
+        NONE,
+        EWMA,
+        MOVING_AVERAGE,
+        MEDIAN,
+        RATE_OF_CHANGE
+    }
+
+    public static final int MAX_WINDOW = 64;
+
+    private final FilterType[] types;
+    private final float[] alphas;
+    private final int[] windows;
+    private final float[] rateLimits;  // max |rate| for rate of change, 0 -> none
+
+    private final float[] state;       // EWMA value / previous sample for rate of change
+    private final float[] rates;       // latest rate of change
+    private final long[] lastTime;     // rate of change timestamps
+    private final int[] count;         // samples seen, capped at the window size
+    private final int[] head;          // next write position in the raw window ring
+    private final double[] sums;       // moving average running sum
+    private final float[] raw;         // raw window rings, MAX_WINDOW per channel
+    private final float[] sorted;      // sorted windows for the median, MAX_WINDOW per channel
+
+    public SignalFilterBank(int channelCount) {
+        types = new FilterType[channelCount];
+        Arrays.fill(types, FilterType.NONE);
+        alphas = new float[channelCount];
+        windows = new int[channelCount];
+        rateLimits = new float[channelCount];
+        state = new float[channelCount];
+        rates = new float[channelCount];
+        lastTime = new long[channelCount];
+        count = new int[channelCount];
+        head = new int[channelCount];
+        sums = new double[channelCount];
+        raw = new float[channelCount * MAX_WINDOW];
+        sorted = new float[channelCount * MAX_WINDOW];
+    }
+
+    // Configure channel from a spec like "EWMA:0.3", "MA:8", "MEDIAN:5", "ROC", "ROC:0.5" or "NONE"
+    public void configure(int ch, String spec) {
+        String[] parts = spec.trim().split(":");
+        String name = parts[0].trim().toUpperCase();
+        float param = parts.length > 1 ? Float.parseFloat(parts[1].trim()) : 0;
+
+        switch (name) {
+        case "":
+        case "NONE":
+            configure(ch, FilterType.NONE, 0);
+            break;
+        case "EWMA":
+            configure(ch, FilterType.EWMA, param);
+            break;
+        case "MA":
+        case "MOVING_AVERAGE":
+            configure(ch, FilterType.MOVING_AVERAGE, param);
+            break;
+        case "MEDIAN":
+            configure(ch, FilterType.MEDIAN, param);
+            break;
+        case "ROC":
+        case "RATE_OF_CHANGE":
+            configure(ch, FilterType.RATE_OF_CHANGE, param);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown filter: " + spec);
+        }
+    }
+
+    // param is alpha in (0, 1] for EWMA, the window length for MOVING_AVERAGE / MEDIAN and the
+    // rate limit (units per second, 0 -> none) for RATE_OF_CHANGE
+    public void configure(int ch, FilterType type, float param) {
+        if (type == FilterType.EWMA && !(param > 0 && param <= 1)) {
+            throw new IllegalArgumentException("EWMA alpha must be in (0, 1]: " + param);
+        }
+        if ((type == FilterType.MOVING_AVERAGE || type == FilterType.MEDIAN) && (param < 1 || param > MAX_WINDOW)) {
+            throw new IllegalArgumentException("Window must be in [1, " + MAX_WINDOW + "]: " + param);
+        }
+        if (type == FilterType.RATE_OF_CHANGE && !(param >= 0)) {
+            throw new IllegalArgumentException("Rate limit must not be negative: " + param);
+        }
+
+        types[ch] = type;
+        alphas[ch] = type == FilterType.EWMA ? param : 0;
+        windows[ch] = (type == FilterType.MOVING_AVERAGE || type == FilterType.MEDIAN) ? (int) param : 0;
+        rateLimits[ch] = type == FilterType.RATE_OF_CHANGE ? param : 0;
+        rates[ch] = 0;
+        count[ch] = 0;
+        head[ch] = 0;
+        sums[ch] = 0;
+    }
+
+    public FilterType getType(int ch) {
+        return types[ch];
+    }
+
+    public boolean hasRate(int ch) {
+        return types[ch] == FilterType.RATE_OF_CHANGE;
+    }
+
+    // rate of change after the last sample, units per second
+    public float getRate(int ch) {
+        return rates[ch];
+    }
+
+    public float getRateLimit(int ch) {
+        return rateLimits[ch];
+    }
+
+    // Feed one raw sample, returns the filtered value
+    public float apply(int ch, float x, long timestampNs) {
+        switch (types[ch]) {
+        case EWMA:
+            if (count[ch] == 0) {
+                state[ch] = x;
+                count[ch] = 1;
+            } else {
+                state[ch] += alphas[ch] * (x - state[ch]);
+            }
+            return state[ch];
+        case MOVING_AVERAGE:
+            return movingAverage(ch, x);
+        case MEDIAN:
+            return median(ch, x);
+        case RATE_OF_CHANGE:
+            rates[ch] = rateOfChange(ch, x, timestampNs);
+            return x; // limits and control keep working on the level
+        case NONE:
+        default:
+            return x;
+        }
+    }
+
+    private float movingAverage(int ch, float x) {
+        int base = ch * MAX_WINDOW;
+        int w = windows[ch];
+
+        if (count[ch] == w) {
+            sums[ch] -= raw[base + head[ch]]; // oldest sample leaves the window
+        } else {
+            count[ch]++;
+        }
+        raw[base + head[ch]] = x;
+        head[ch] = (head[ch] + 1) % w;
+        sums[ch] += x;
+
+        return (float) (sums[ch] / count[ch]);
+    }
+
+    private float median(int ch, float x) {
+        int base = ch * MAX_WINDOW;
+        int w = windows[ch];
+        int n = count[ch];
+
+        if (n == w) {
+            // remove oldest sample from the sorted window
+            float oldest = raw[base + head[ch]];
+            int pos = Arrays.binarySearch(sorted, base, base + n, oldest);
+            System.arraycopy(sorted, pos + 1, sorted, pos, base + n - pos - 1);
+            n--;
+        }
+        raw[base + head[ch]] = x;
+        head[ch] = (head[ch] + 1) % w;
+
+        // insert new sample keeping the window sorted
+        int pos = Arrays.binarySearch(sorted, base, base + n, x);
+        if (pos < 0) pos = -pos - 1;
+        System.arraycopy(sorted, pos, sorted, pos + 1, base + n - pos);
+        sorted[pos] = x;
+        n++;
+        count[ch] = n;
+
+        int mid = base + n / 2;
+        return (n & 1) == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    private float rateOfChange(int ch, float x, long timestampNs) {
+        float rate = 0;
+        if (count[ch] > 0) {
+            long dt = timestampNs - lastTime[ch];
+            if (dt > 0) rate = (x - state[ch]) / (dt / 1e9f);
+        }
+        state[ch] = x;
+        lastTime[ch] = timestampNs;
+        count[ch] = 1;
+        return rate;
+    }
+}
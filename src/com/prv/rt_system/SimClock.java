@@ -0,0 +1,9 @@
+package com.prv.rt_system;
+
+// Time base of the simulation in nanoseconds: wall clock or virtual time of a DiscreteEventScheduler
+public interface SimClock {
+
+    SimClock SYSTEM = System::nanoTime;
+
+    long nanoTime();
+}
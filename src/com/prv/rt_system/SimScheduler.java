@@ -0,0 +1,11 @@
+package com.prv.rt_system;
+
+// Clock that also runs actions at given instants of its own time.
+// Components given a scheduler (periodic tasks, ADC conversion timer) run on it instead of
+// their own threads.
+public interface SimScheduler extends SimClock {
+
+    // Run action once at atNs; actions due at the same instant run higher priority first,
+    // then in scheduling order
+    void scheduleAt(long atNs, int priority, Runnable action);
+}
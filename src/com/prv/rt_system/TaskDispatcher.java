@@ -0,0 +1,170 @@
+package com.prv.rt_system;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Dispatcher that runs all registered periodic tasks on one (or a few) worker threads.
+// Tasks wait in a release-time queue and, once released, are picked from the ready
+// queue by EDF or by fixed (rate monotonic / declared) priority. Jobs are not preempted.
+public class TaskDispatcher {
+
+    public enum Policy {
+        EDF,              // earliest absolute deadline first (deadline = end of period)
+        RATE_MONOTONIC,   // shorter period first, declared priority breaks ties
+        FIXED_PRIORITY    // declared priority first, shorter period breaks ties
+    }
+
+    private final Policy policy;
+    private final Thread[] workers;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queuesChanged = lock.newCondition();
+
+    // tasks waiting for their next release, ordered by release time
+    private final PriorityQueue<PeriodicTask> releaseQueue =
+            new PriorityQueue<>(Comparator.comparingLong((PeriodicTask t) -> t.nextRelease));
+    // released jobs, ordered by scheduling policy
+    private final PriorityQueue<PeriodicTask> readyQueue;
+
+    private volatile boolean running = true;
+
+    public TaskDispatcher(Policy policy) {
+        this(policy, 1);
+    }
+
+    public TaskDispatcher(Policy policy, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Dispatcher needs at least one worker");
+        }
+        this.policy = policy;
+        this.readyQueue = new PriorityQueue<>(comparatorFor(policy));
+
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::workerLoop, "dispatcher-" + policy + "-" + i);
+            workers[i].setPriority(Thread.MAX_PRIORITY);
+            workers[i].start();
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    // Add task to the release queue, first job is released immediately
+    void register(PeriodicTask task) {
+        lock.lock();
+        try {
+            task.nextRelease = System.nanoTime();
+            releaseQueue.add(task);
+            queuesChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Remove task from both queues; a job that is currently running finishes normally
+    void unregister(PeriodicTask task) {
+        lock.lock();
+        try {
+            releaseQueue.remove(task);
+            readyQueue.remove(task);
+            queuesChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void workerLoop() {
+        lock.lock();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                releaseDueJobs(now);
+
+                PeriodicTask job = readyQueue.poll();
+                if (job != null) {
+                    long release = job.nextRelease;
+                    long nextRelease;
+
+                    // run job outside of the lock so other workers can dispatch meanwhile
+                    lock.unlock();
+                    try {
+                        nextRelease = job.runJob(release);
+                    } finally {
+                        lock.lock();
+                    }
+
+                    if (job.isActive()) {
+                        job.nextRelease = nextRelease;
+                        releaseQueue.add(job);
+                    }
+                    continue;
+                }
+
+                PeriodicTask next = releaseQueue.peek();
+                if (next == null) {
+                    queuesChanged.await();
+                } else {
+                    queuesChanged.awaitNanos(next.nextRelease - now);
+                }
+            }
+        } catch (InterruptedException e) {
+            // dispatcher shutdown
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Move every task whose release time has passed into the ready queue
+    private void releaseDueJobs(long now) {
+        PeriodicTask next;
+        while ((next = releaseQueue.peek()) != null && next.nextRelease - now <= 0) {
+            releaseQueue.poll();
+            readyQueue.add(next);
+        }
+    }
+
+    private static Comparator<PeriodicTask> comparatorFor(Policy policy) {
+        Comparator<PeriodicTask> byDeadline = Comparator.comparingLong(t -> t.nextRelease + t.getPeriodNs());
+        Comparator<PeriodicTask> byPeriod = Comparator.comparingLong(PeriodicTask::getPeriodNs);
+        Comparator<PeriodicTask> byPriority = Comparator.comparingInt(PeriodicTask::getPriority).reversed();
+
+        switch (policy) {
+        case EDF:
+            return byDeadline.thenComparing(byPriority);
+        case RATE_MONOTONIC:
+            return byPeriod.thenComparing(byPriority);
+        case FIXED_PRIORITY:
+        default:
+            return byPriority.thenComparing(byPeriod);
+        }
+    }
+
+    // Parse policy name given on the command line ("edf", "rm", "fp")
+    public static Policy parsePolicy(String name) {
+        switch (name.toLowerCase()) {
+        case "edf":
+            return Policy.EDF;
+        case "rm":
+            return Policy.RATE_MONOTONIC;
+        case "fp":
+            return Policy.FIXED_PRIORITY;
+        default:
+            throw new IllegalArgumentException("Unknown dispatcher policy: " + name);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.prv.rt_system;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts control events per type and keeps the end-to-end publish->consume latency.
+// The latency is only measured in real time: events stamped by a scheduler are consumed on the
+// scheduler thread at virtual instants, which says nothing about the delivery.
+public class TelemetryConsumer implements EventConsumer {
+    private static final ControlEvent.Type[] TYPES = ControlEvent.Type.values();
+
+    private final AtomicLongArray counts = new AtomicLongArray(TYPES.length);
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final SimClock clock;
+    private final boolean measureDelivery;
+
+    public TelemetryConsumer() {
+        this(SimClock.SYSTEM);
+    }
+
+    // clock must be the one stamping the events
+    public TelemetryConsumer(SimClock clock) {
+        this.clock = clock;
+        this.measureDelivery = !(clock instanceof SimScheduler);
+    }
+
+    @Override
+    public void onEvent(ControlEvent event, long sequence, boolean endOfBatch) {
+        counts.lazySet(event.type.ordinal(), counts.get(event.type.ordinal()) + 1);
+        if (measureDelivery) deliveryLatency.record(clock.nanoTime() - event.timestampNs);
+    }
+
+    public long getCount(ControlEvent.Type type) {
+        return counts.get(type.ordinal());
+    }
+
+    // empty in virtual time
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder("events:");
+        for (ControlEvent.Type type : TYPES) {
+            sb.append(' ').append(type).append('=').append(getCount(type));
+        }
+        if (!measureDelivery) {
+            sb.append(" | delivery n/a (virtual time)");
+        } else {
+            sb.append(String.format(" | delivery p50=%.3f p99=%.3f max=%.3f ms",
+                    deliveryLatency.getValueAtPercentile(50) / 1_000_000.0,
+                    deliveryLatency.getValueAtPercentile(99) / 1_000_000.0,
+                    deliveryLatency.getMax() / 1_000_000.0));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,162 @@
+package com.prv.rt_system;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Hashed timer wheel driven by one thread, shared by any number of timeouts (e.g. ADC conversions).
+// Scheduling and expiring a timeout are O(1). Timeouts are intrusive nodes owned by the caller
+// and reused for every scheduling, so the wheel never allocates after construction.
+// The wheel thread starts with the first scheduled timeout. When driven by a SimScheduler the
+// wheel has no thread and every timeout becomes a scheduler action at its expiry tick.
+public class TimerWheel {
+
+    // Intrusive timeout node, subclass and reuse it
+    public abstract static class Timeout {
+        private Timeout next;
+        private long rounds;
+        private boolean scheduled;
+        private Runnable schedulerExpiry; // created on first use in scheduler mode
+
+        // called on the timer thread when the timeout expires
+        protected abstract void onExpire();
+
+        public synchronized boolean isScheduled() {
+            return scheduled;
+        }
+    }
+
+    private final long tickNs;
+    private final int mask;
+    private final Timeout[] slots;
+    private final Thread timerThread;
+    private boolean started = false; // guarded by this
+
+    private long tick = 0;   // last processed tick, guarded by this
+    private volatile boolean running = true;
+    private volatile SimScheduler scheduler = null;
+
+    public TimerWheel(long tickMs, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two");
+        }
+        this.tickNs = tickMs * 1_000_000L;
+        this.mask = wheelSize - 1;
+        this.slots = new Timeout[wheelSize];
+
+        timerThread = new Thread(this::timerLoop, "timer-wheel");
+        timerThread.setDaemon(true);
+        timerThread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    // Schedule timeout to expire after delayMs (rounded up to whole ticks).
+    // Returns false if the timeout is already pending.
+    public boolean schedule(Timeout timeout, long delayMs) {
+        long ticks = Math.max(1, (delayMs * 1_000_000L + tickNs - 1) / tickNs);
+
+        SimScheduler s = scheduler;
+        if (s != null) {
+            synchronized (timeout) {
+                if (timeout.scheduled) return false;
+                timeout.scheduled = true;
+            }
+            if (timeout.schedulerExpiry == null) {
+                timeout.schedulerExpiry = () -> expire(timeout);
+            }
+            s.scheduleAt(s.nanoTime() + ticks * tickNs, Thread.MAX_PRIORITY, timeout.schedulerExpiry);
+            return true;
+        }
+
+        synchronized (this) {
+            if (!started) {
+                if (!running) return false;
+                started = true;
+                timerThread.start();
+            }
+            synchronized (timeout) {
+                if (timeout.scheduled) return false;
+                timeout.scheduled = true;
+            }
+            int slot = (int) ((tick + ticks) & mask);
+            timeout.rounds = (ticks - 1) / slots.length;
+            timeout.next = slots[slot];
+            slots[slot] = timeout;
+        }
+        return true;
+    }
+
+    // Stop the wheel thread and run timeouts on the scheduler, before anything is scheduled
+    void driveBy(SimScheduler scheduler) {
+        shutdown();
+        this.scheduler = scheduler;
+    }
+
+    // current time of the clock driving the wheel
+    long nanoTime() {
+        SimScheduler s = scheduler;
+        return s != null ? s.nanoTime() : System.nanoTime();
+    }
+
+    long getThreadId() {
+        return timerThread.getId();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (started) timerThread.interrupt();
+    }
+
+    private void timerLoop() {
+        long start = System.nanoTime();
+        long processed = 0;
+
+        while (running) {
+            long nextTickAt = start + (processed + 1) * tickNs;
+            long wait = nextTickAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                if (Thread.interrupted()) break;
+                continue;
+            }
+
+            processed++;
+            expire(advance());
+        }
+    }
+
+    // Move to the next tick and detach every timeout that expires in it
+    private synchronized Timeout advance() {
+        tick++;
+        int slot = (int) (tick & mask);
+
+        Timeout node = slots[slot];
+        slots[slot] = null;
+
+        Timeout expired = null;
+        while (node != null) {
+            Timeout next = node.next;
+            if (node.rounds > 0) {
+                // not yet, stays in this slot for another revolution
+                node.rounds--;
+                node.next = slots[slot];
+                slots[slot] = node;
+            } else {
+                node.next = expired;
+                expired = node;
+            }
+            node = next;
+        }
+        return expired;
+    }
+
+    // Run callbacks outside of the wheel lock so they may reschedule themselves
+    private void expire(Timeout node) {
+        while (node != null) {
+            Timeout next = node.next;
+            node.next = null;
+            synchronized (node) {
+                node.scheduled = false;
+            }
+            node.onExpire();
+            node = next;
+        }
+    }
+}